@@ -18,6 +18,8 @@ package de.odysseus.ithaka.audioinfo.m4a;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -99,8 +101,8 @@ import de.odysseus.ithaka.audioinfo.mp3.ID3v1Genre;
 public class M4AInfo extends AudioInfo {
 	static final Logger LOGGER = Logger.getLogger(M4AInfo.class.getName());
 
-	private static final String ASCII = "ISO8859_1";
-	private static final String UTF_8 = "UTF-8";
+	private static final Charset ASCII = StandardCharsets.ISO_8859_1;
+	private static final Charset UTF_8 = StandardCharsets.UTF_8;
 
 	private BigDecimal volume;		// normal = 1.0
 	private BigDecimal speed;		// normal = 1.0
@@ -18,8 +18,10 @@ package de.odysseus.ithaka.audioinfo.m4a;
 import java.io.EOFException;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.Charset;
 
 import de.odysseus.ithaka.audioinfo.util.RangeInputStream;
+import de.odysseus.ithaka.audioinfo.util.TextDecoder;
 
 /**
  * MP4 atom.
@@ -107,15 +109,28 @@ public class MP4Atom extends MP4Box<RangeInputStream> {
 	}
 
 	public String readString(int len, String enc) throws IOException {
-		String s = new String(readBytes(len), enc);
-		int end = s.indexOf(0);
-		return end < 0 ? s : s.substring(0, end);
+		return readString(len, Charset.forName(enc));
 	}
 
 	public String readString(String enc) throws IOException {
 		return readString((int)getRemaining(), enc);
 	}
 
+	/**
+	 * Read a string of the given length, up to its zero terminator.
+	 * @param len string length (bytes)
+	 * @param charset charset
+	 * @return string
+	 * @throws IOException
+	 */
+	public String readString(int len, Charset charset) throws IOException {
+		return TextDecoder.decodeTerminated(readBytes(len), 0, len, charset);
+	}
+
+	public String readString(Charset charset) throws IOException {
+		return readString((int)getRemaining(), charset);
+	}
+
 	public void skip(int len) throws IOException {
 		int total = 0;
 		while (total < len) {
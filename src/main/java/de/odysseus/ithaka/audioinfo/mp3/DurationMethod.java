@@ -0,0 +1,27 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+/**
+ * Method which produced the duration reported by {@link MP3Info}.
+ */
+public enum DurationMethod {
+	TAG,		// ID3v2 length (TLEN)
+	HEADER,		// Xing/Info/VBRI header
+	CBR,		// constant bitrate extrapolated to the file length
+	SAMPLED,	// estimated from sample windows (see MP3Info.getDurationError())
+	SCAN		// scanned all frames
+}
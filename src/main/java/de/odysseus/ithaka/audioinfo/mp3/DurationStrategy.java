@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+/**
+ * Strategy used by {@link MP3Info} to determine the duration.
+ * Every strategy reads the ID3v2 tag and searches the first audio frame (which may read the whole file
+ * if there is no valid frame). The worst-case I/O beyond that is documented per strategy.
+ * The method which actually produced the duration is reported by {@link MP3Info#getDurationMethod()}.
+ */
+public enum DurationStrategy {
+	/**
+	 * Use the ID3v2 length (<code>TLEN</code>) if it is plausible, else the Xing/Info/VBRI header.
+	 * Tag durations of one hour and more are checked against the Xing/Info/VBRI header or the first frame's
+	 * bitrate (see {@link MP3Options#setTagDurationTolerance(double)}).
+	 * Without header, frames are scanned; if the bitrate is constant for 10 seconds, CBR is assumed.
+	 * Worst case: the whole file (VBR without header).
+	 * This is the default.
+	 */
+	TRUST_TAGS,
+	/**
+	 * Use the Xing/Info/VBRI header, else extrapolate the first frame's bitrate to the file length.
+	 * Fast but inaccurate for VBR files without header. Requires the file length.
+	 * Worst case: the first audio frame.
+	 */
+	HEADER_ONLY,
+	/**
+	 * Use the Xing/Info/VBRI header, else estimate the duration from sample windows spread over the file
+	 * (see {@link MP3Options#setDurationSamples(int)}). Small files are scanned completely.
+	 * Requires the file length.
+	 * Worst case: about <code>2 * durationSamples * durationSampleSize</code> bytes (plus resync distances).
+	 */
+	SAMPLED,
+	/**
+	 * Ignore tags and headers and count all frames (in parallel if enabled via
+	 * {@link MP3Options#setScanSegments(int)}).
+	 * Worst case: the whole file.
+	 */
+	EXACT_SCAN
+}
@@ -21,6 +21,7 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 
 import de.odysseus.ithaka.audioinfo.AudioInfo;
+import de.odysseus.ithaka.audioinfo.util.TextDecoder;
 
 public class ID3v1Info extends AudioInfo {
 	public static boolean isID3v1StartPosition(InputStream input) throws IOException {
@@ -76,8 +77,6 @@ public class ID3v1Info extends AudioInfo {
 	}
 
 	String extractString(byte[] bytes, int offset, int length) {
-		String text = new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
-		int zeroIndex = text.indexOf(0);
-		return zeroIndex < 0 ? text : text.substring(0, zeroIndex);
+		return TextDecoder.decodeTerminated(bytes, offset, length, StandardCharsets.ISO_8859_1);
 	}
 }
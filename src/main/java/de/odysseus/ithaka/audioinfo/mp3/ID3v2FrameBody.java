@@ -15,10 +15,18 @@
  */
 package de.odysseus.ithaka.audioinfo.mp3;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
+import de.odysseus.ithaka.audioinfo.util.ByteBufferInputStream;
 import de.odysseus.ithaka.audioinfo.util.RangeInputStream;
+import de.odysseus.ithaka.audioinfo.util.TextDecoder;
 
 public class ID3v2FrameBody {
 	/**
@@ -51,28 +59,177 @@ public class ID3v2FrameBody {
 		}
 	};
 	
-	private final RangeInputStream input;
+	/*
+	 * Inflaters hold native memory, which is only released by end(). Reuse one per thread.
+	 */
+	static final ThreadLocal<Inflater> inflater = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+	
+	/**
+	 * Create a stream inflating the given compressed data, using the thread's inflater.
+	 * @param compressed compressed data
+	 * @return inflating stream
+	 */
+	static InputStream inflaterInputStream(InputStream compressed) {
+		Inflater inflater = ID3v2FrameBody.inflater.get();
+		inflater.reset();
+		return new InflaterInputStream(compressed, inflater); // does not end() the given inflater
+	}
+
+	private final RangeInputStream input; // null if buffered
+	private final RangeInputStream frameInput; // underlying frame body stream or null
+	private ByteBuffer buffer; // null if streamed or not yet inflated
+	private ByteBuffer compressed; // compressed data or null
+	private final int dataLength; // inflated length
+	private final long position;
 	private final ID3v2TagHeader tagHeader;
 	private final ID3v2FrameHeader frameHeader;
-	private final ID3v2DataInput data;
+	private ID3v2DataInput data;
 	
 	ID3v2FrameBody(InputStream delegate, long position, int dataLength, ID3v2TagHeader tagHeader, ID3v2FrameHeader frameHeader) throws IOException {
+		this(delegate, position, dataLength, tagHeader, frameHeader, null);
+	}
+
+	/**
+	 * Create streamed frame body.
+	 * @param delegate frame data stream
+	 * @param position frame body position
+	 * @param dataLength frame data length (decoded)
+	 * @param tagHeader tag header
+	 * @param frameHeader frame header
+	 * @param frameInput frame body stream underlying the delegate (e.g. unsynchronised), or <code>null</code>
+	 */
+	ID3v2FrameBody(InputStream delegate, long position, int dataLength, ID3v2TagHeader tagHeader, ID3v2FrameHeader frameHeader, RangeInputStream frameInput) throws IOException {
 		this.input = new RangeInputStream(delegate, position, dataLength);
+		this.frameInput = frameInput;
+		this.buffer = null;
+		this.dataLength = dataLength;
+		this.position = position;
 		this.data = new ID3v2DataInput(input);
 		this.tagHeader = tagHeader;
 		this.frameHeader = frameHeader;
 	}
+
+	/**
+	 * Create buffered frame body.
+	 * @param buffer heap buffer holding the body's bytes from its position to its limit
+	 */
+	ID3v2FrameBody(ByteBuffer buffer, long position, ID3v2TagHeader tagHeader, ID3v2FrameHeader frameHeader) {
+		this.input = null;
+		this.frameInput = null;
+		this.buffer = buffer.slice();
+		this.dataLength = this.buffer.remaining();
+		this.position = position;
+		this.tagHeader = tagHeader;
+		this.frameHeader = frameHeader;
+	}
+
+	/**
+	 * Create compressed frame body. The data is inflated into a buffer on first access.
+	 * @param compressed heap buffer holding the compressed data from its position to its limit
+	 * @param dataLength inflated length (data length indicator)
+	 */
+	ID3v2FrameBody(ByteBuffer compressed, int dataLength, long position, ID3v2TagHeader tagHeader, ID3v2FrameHeader frameHeader) {
+		this.input = null;
+		this.frameInput = null;
+		this.compressed = compressed.slice();
+		this.dataLength = dataLength;
+		this.position = position;
+		this.tagHeader = tagHeader;
+		this.frameHeader = frameHeader;
+	}
+
+	/**
+	 * Inflate the compressed data into the buffer. If inflation fails, the buffer is left empty.
+	 * @throws ZipException
+	 */
+	private void inflate() throws ZipException {
+		if (compressed == null) {
+			return;
+		}
+		ByteBuffer input = compressed;
+		compressed = null;
+		buffer = ByteBuffer.allocate(0);
+		if (dataLength < 0) {
+			throw new ZipException("Invalid data length indicator: " + dataLength);
+		}
+		byte[] bytes = new byte[dataLength];
+		int length = 0;
+		Inflater inflater = ID3v2FrameBody.inflater.get();
+		inflater.reset();
+		inflater.setInput(input.array(), input.arrayOffset() + input.position(), input.remaining());
+		try {
+			while (length < bytes.length) {
+				int count = inflater.inflate(bytes, length, bytes.length - length);
+				if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break; // short data is detected by the readers
+				}
+				length += count;
+			}
+		} catch (DataFormatException e) {
+			throw new ZipException("Could not inflate frame: " + e.getMessage());
+		} finally {
+			inflater.reset();
+		}
+		buffer = ByteBuffer.wrap(bytes, 0, length);
+	}
+
+	private void checkInflated() throws ID3v2Exception {
+		try {
+			inflate();
+		} catch (ZipException e) {
+			throw new ID3v2Exception(e.getMessage());
+		}
+	}
 	
 	public ID3v2DataInput getData() {
+		if (data == null) {
+			if (compressed != null) {
+				data = new ID3v2DataInput(new InputStream() { // inflate on first read
+					private InputStream delegate;
+					private InputStream delegate() throws IOException {
+						if (delegate == null) {
+							inflate();
+							delegate = new ByteBufferInputStream(buffer);
+						}
+						return delegate;
+					}
+					@Override
+					public int read() throws IOException {
+						return delegate().read();
+					}
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						return delegate().read(b, off, len);
+					}
+					@Override
+					public long skip(long n) throws IOException {
+						return delegate().skip(n);
+					}
+				});
+			} else { // buffered
+				data = new ID3v2DataInput(new ByteBufferInputStream(buffer));
+			}
+		}
 		return data;
 	}
 	
 	public long getPosition() {
-		return input.getPosition();
+		if (compressed != null) {
+			return position;
+		}
+		return buffer != null ? position + buffer.position() : input.getPosition();
 	}
 	
 	public long getRemainingLength() {
-		return input.getRemainingLength();
+		if (compressed != null) {
+			return dataLength;
+		}
+		return buffer != null ? buffer.remaining() : input.getRemainingLength();
 	}
 	
 	public ID3v2TagHeader getTagHeader() {
@@ -88,7 +245,7 @@ public class ID3v2FrameBody {
 			int zeros = 0;
 			for (int i = 0; i < length; i++) {
 				// UTF-16LE may have a zero byte as second byte of a 2-byte character -> skip first zero at odd index
-				if (bytes[offset + i] == 0 && (encoding != ID3v2Encoding.UTF_16 || zeros != 0 || (offset + i) % 2 == 0)) {
+				if (bytes[offset + i] == 0 && (encoding != ID3v2Encoding.UTF_16 || zeros != 0 || i % 2 == 0)) {
 					if (++zeros == encoding.getZeroBytes()) {
 						length = i + 1 - encoding.getZeroBytes();
 						break;
@@ -98,16 +255,30 @@ public class ID3v2FrameBody {
 				}
 			}
 		}
-		String string = new String(bytes, offset, length, encoding.getCharset());
-		if (string.length() > 0 && string.charAt(0) == '\uFEFF') { // remove BOM
-			string = string.substring(1);
-		}
-		return string;
+		return TextDecoder.decode(bytes, offset, length, encoding.getCharset());
 	}
 
 	public String readZeroTerminatedString(int maxLength, ID3v2Encoding encoding) throws IOException, ID3v2Exception {
+		checkInflated();
 		int zeros = 0;
 		int length = Math.min(maxLength, (int)getRemainingLength());
+		if (buffer != null) {
+			byte[] bytes = buffer.array();
+			int offset = buffer.arrayOffset() + buffer.position();
+			buffer.position(buffer.position() + length);
+			for (int i = 0; i < length; i++) {
+				// UTF-16LE may have a zero byte as second byte of a 2-byte character -> skip first zero at odd index
+				if (bytes[offset + i] == 0 && (encoding != ID3v2Encoding.UTF_16 || zeros != 0 || i % 2 == 0)) {
+					if (++zeros == encoding.getZeroBytes()) {
+						buffer.position(buffer.position() - length + i + 1);
+						return extractString(bytes, offset, i + 1 - encoding.getZeroBytes(), encoding, false);
+					}
+				} else {
+					zeros = 0;
+				}
+			}
+			throw new ID3v2Exception("Could not read zero-termiated string");
+		}
 		byte[] bytes = textBuffer.get().bytes(length);
 		for (int i = 0; i < length; i++) {
 			// UTF-16LE may have a zero byte as second byte of a 2-byte character -> skip first zero at odd index
@@ -123,16 +294,31 @@ public class ID3v2FrameBody {
 	}
 
 	public String readFixedLengthString(int length, ID3v2Encoding encoding) throws IOException, ID3v2Exception {
+		checkInflated();
 		if (length > getRemainingLength()) {
 			throw new ID3v2Exception("Could not read fixed-length string of length: " + length);
 		}
+		if (buffer != null) {
+			int offset = buffer.arrayOffset() + buffer.position();
+			buffer.position(buffer.position() + length);
+			return extractString(buffer.array(), offset, length, encoding, true);
+		}
 		byte[] bytes = textBuffer.get().bytes(length);
 		data.readFully(bytes, 0, length);
 		return extractString(bytes, 0, length, encoding, true);
 	}
 	
 	public ID3v2Encoding readEncoding() throws IOException, ID3v2Exception {
-		byte value = data.readByte();
+		checkInflated();
+		byte value;
+		if (buffer != null) {
+			if (!buffer.hasRemaining()) {
+				throw new EOFException();
+			}
+			value = buffer.get();
+		} else {
+			value = data.readByte();
+		}
 		switch (value) {
 		case 0: return ID3v2Encoding.ISO_8859_1;
 		case 1: return ID3v2Encoding.UTF_16;
@@ -143,6 +329,23 @@ public class ID3v2FrameBody {
 		throw new ID3v2Exception("Invalid encoding: " + value);
 	}
 
+	/**
+	 * Skip the remaining bytes.
+	 * @throws IOException
+	 */
+	void skipRemaining() throws IOException {
+		if (compressed != null) { // never inflated
+			compressed = null;
+			buffer = ByteBuffer.allocate(0);
+		} else if (buffer != null) {
+			buffer.position(buffer.limit());
+		} else if (frameInput != null) { // skip undecoded bytes
+			new ID3v2DataInput(frameInput).skipFully(frameInput.getRemainingLength());
+		} else {
+			data.skipFully(getRemainingLength());
+		}
+	}
+
 	public String toString() {
 		return "id3v2frame[pos=" + getPosition() + ", " + getRemainingLength() + " left]";
 	}
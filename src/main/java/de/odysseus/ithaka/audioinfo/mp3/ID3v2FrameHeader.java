@@ -15,10 +15,15 @@
  */
 package de.odysseus.ithaka.audioinfo.mp3;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class ID3v2FrameHeader {
-	private String frameId;
+	private final byte[] headerBytes = new byte[10]; // header bytes read from a stream
+	private int rawId; // packed ID as found in the tag
+	private int idLength;
+	private int id; // packed v2.3/v2.4 ID
 	private int headerSize;
 	private int bodySize;
 	private boolean unsynchronization;
@@ -27,96 +32,139 @@ public class ID3v2FrameHeader {
 	private int dataLengthIndicator; // uncompressed size
 	
 	/*
-	 * Parse header and consume bytes up the frame data
+	 * Parse header and consume bytes up the frame data.
+	 * The header is decoded from a byte array: the tag body's buffer, or the header bytes read from its stream.
 	 */
 	public ID3v2FrameHeader(ID3v2TagBody input) throws IOException, ID3v2Exception {
-		long startPosition = input.getPosition();
+		read(input);
+	}
+
+	/**
+	 * Create empty header, to be reused via {@link #read(ID3v2TagBody)}.
+	 */
+	ID3v2FrameHeader() {
+	}
+
+	/*
+	 * Parse next header and consume bytes up the frame data.
+	 */
+	void read(ID3v2TagBody input) throws IOException, ID3v2Exception {
+		unsynchronization = compression = encryption = false;
+		dataLengthIndicator = 0;
+		int version = input.getTagHeader().getVersion();
+		int fixedSize = version == 2 ? 6 : 10; // id, size (and flags)
+		ByteBuffer buffer = input.getBuffer();
+		byte[] bytes;
+		int offset;
+		if (buffer != null) {
+			if (buffer.remaining() < fixedSize) {
+				throw new EOFException();
+			}
+			bytes = buffer.array();
+			offset = buffer.arrayOffset() + buffer.position();
+		} else {
+			bytes = headerBytes;
+			input.getData().readFully(bytes, 0, fixedSize);
+			offset = 0;
+		}
 
-		ID3v2DataInput data = input.getData();
-		
 		/*
 		 * Frame Id
 		 */
-		if (input.getTagHeader().getVersion() == 2) { // $xx xx xx (three characters)
-			frameId = new String(data.readFully(3), ID3v2Encoding.ISO_8859_1.getCharset());
+		if (version == 2) { // $xx xx xx (three characters)
+			idLength = 3;
+			rawId = ((bytes[offset] & 0xFF) << 16) | ((bytes[offset + 1] & 0xFF) << 8) | (bytes[offset + 2] & 0xFF);
+			id = ID3v2FrameId.decode(rawId);
 		} else { // $xx xx xx xx (four characters)
-			frameId = new String(data.readFully(4), ID3v2Encoding.ISO_8859_1.getCharset());
+			idLength = 4;
+			rawId = id = readInt(bytes, offset);
 		}
 		
 		/*
 		 * Size 
 		 */
-		if (input.getTagHeader().getVersion() == 2) { // $xx xx xx
-			bodySize = ((data.readByte() & 0xFF) << 16) | ((data.readByte() & 0xFF) << 8) | (data.readByte() & 0xFF);
-		} else if (input.getTagHeader().getVersion() == 3) { // $xx xx xx xx
-			bodySize = data.readInt();
+		if (version == 2) { // $xx xx xx
+			bodySize = ((bytes[offset + 3] & 0xFF) << 16) | ((bytes[offset + 4] & 0xFF) << 8) | (bytes[offset + 5] & 0xFF);
+		} else if (version == 3) { // $xx xx xx xx
+			bodySize = readInt(bytes, offset + 4);
 		} else { // 4 * %0xxxxxxx (sync-save integer)
-			bodySize = data.readSyncsafeInt();
+			bodySize = readSyncsafeInt(bytes, offset + 4);
 		}
 		
 		/*
 		 * Flags
 		 */
-		if (input.getTagHeader().getVersion() > 2) { // $xx xx
-			data.readByte(); // status flags
-			byte formatFlags = data.readByte();
-			int compressionMask = 0x00;
-			int encryptionMask = 0x00;
-			int groupingIdentityMask = 0x00;
-			int unsynchronizationMask = 0x00;
-			int dataLengthIndicatorMask = 0x00;
-			if (input.getTagHeader().getVersion() == 3) { // %(compression)(encryption)(groupingIdentity)00000
-				compressionMask = 0x80;
-				encryptionMask = 0x40;
-				groupingIdentityMask = 0x20;
+		int attachmentSize = 0;
+		if (version > 2) { // $xx xx
+			byte formatFlags = bytes[offset + 9]; // skip status flags
+			boolean groupingIdentity;
+			boolean dataLengthIndicatorPresent;
+			if (version == 3) { // %(compression)(encryption)(groupingIdentity)00000
+				compression = (formatFlags & 0x80) != 0;
+				encryption = (formatFlags & 0x40) != 0;
+				groupingIdentity = (formatFlags & 0x20) != 0;
+				dataLengthIndicatorPresent = compression;
 			} else { // %0(groupingIdentity)00(compression)(encryption)(unsynchronization)(dataLengthIndicator)
-				groupingIdentityMask = 0x40;
-				compressionMask = 0x08;
-				encryptionMask = 0x04;
-				unsynchronizationMask = 0x02;
-				dataLengthIndicatorMask = 0x01;
+				groupingIdentity = (formatFlags & 0x40) != 0;
+				compression = (formatFlags & 0x08) != 0;
+				encryption = (formatFlags & 0x04) != 0;
+				unsynchronization = (formatFlags & 0x02) != 0;
+				dataLengthIndicatorPresent = (formatFlags & 0x01) != 0;
 			}
-			compression = (formatFlags & compressionMask) != 0;
-			unsynchronization = (formatFlags & unsynchronizationMask) != 0;
-			encryption = (formatFlags & encryptionMask) != 0;
+			attachmentSize = (groupingIdentity ? 1 : 0) + (encryption ? 1 : 0) + (dataLengthIndicatorPresent ? 4 : 0);
 
 			/*
 			 * Read flag attachments in the order of the flags (version dependent).
+			 * Grouping identity and encryption method are skipped.
 			 */
-			if (input.getTagHeader().getVersion() == 3) {
-				if (compression) {
-					dataLengthIndicator = data.readInt();
-					bodySize -= 4;
-				}
-				if (encryption) {
-					data.readByte(); // just skip
-					bodySize -= 1;
-				}
-				if ((formatFlags & groupingIdentityMask) != 0) {
-					data.readByte(); // just skip
-					bodySize -= 1;
-				}
-			} else {
-				if ((formatFlags & groupingIdentityMask) != 0) {
-					data.readByte(); // just skip
-					bodySize -= 1;
+			if (attachmentSize > 0) {
+				if (buffer != null) {
+					if (buffer.remaining() < fixedSize + attachmentSize) {
+						throw new EOFException();
+					}
+					offset += fixedSize;
+				} else {
+					bytes = headerBytes;
+					input.getData().readFully(bytes, 0, attachmentSize);
+					offset = 0;
 				}
-				if (encryption) {
-					data.readByte(); // just skip
-					bodySize -= 1;
+				if (dataLengthIndicatorPresent) {
+					if (version == 3) { // first attachment
+						dataLengthIndicator = readInt(bytes, offset);
+					} else { // last attachment
+						dataLengthIndicator = readSyncsafeInt(bytes, offset + attachmentSize - 4);
+					}
 				}
-				if ((formatFlags & dataLengthIndicatorMask) != 0) {
-					dataLengthIndicator = data.readSyncsafeInt();
-					bodySize -= 4;
-				}				
+				bodySize -= attachmentSize;
 			}
 		}
 
-		headerSize = (int)(input.getPosition() - startPosition);
+		headerSize = fixedSize + attachmentSize;
+		if (buffer != null) {
+			buffer.position(buffer.position() + headerSize);
+		}
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
 	}
 
+	private static int readSyncsafeInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0x7F) << 21) | ((bytes[offset + 1] & 0x7F) << 14) | ((bytes[offset + 2] & 0x7F) << 7) | (bytes[offset + 3] & 0x7F);
+	}
+
+	/**
+	 * @return frame ID as found in the tag (created on demand, for diagnostics)
+	 */
 	public String getFrameId() {
-		return frameId;
+		return ID3v2FrameId.toString(rawId, idLength);
+	}
+
+	/**
+	 * @return packed frame ID (see {@link ID3v2FrameId}), with v2.2 IDs mapped to their v2.3/v2.4 equivalents
+	 */
+	int getId() {
+		return id;
 	}
 	
 	public int getHeaderSize() {
@@ -144,25 +192,15 @@ public class ID3v2FrameHeader {
 	}
 	
 	public boolean isValid() {
-		for (int i = 0; i < frameId.length(); i++) {
-			if ((frameId.charAt(i) < 'A' || frameId.charAt(i) > 'Z') && (frameId.charAt(i) < '0' || frameId.charAt(i) > '9')) {
-				return false;
-			}
-		}
-		return bodySize > 0;
+		return ID3v2FrameId.isValid(rawId, idLength) && bodySize > 0;
 	}
 	
 	public boolean isPadding() {
-		for (int i = 0; i < frameId.length(); i++) {
-			if (frameId.charAt(0) != 0) {
-				return false;
-			}
-		}
-		return bodySize == 0;
+		return (rawId >>> ((idLength - 1) << 3)) == 0 && bodySize == 0;
 	}
 	
 	@Override
 	public String toString() {
-		return String.format("%s[id=%s, bodysize=%d]", getClass().getSimpleName(), frameId, bodySize);
+		return String.format("%s[id=%s, bodysize=%d]", getClass().getSimpleName(), getFrameId(), bodySize);
 	}
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+/**
+ * Frame IDs packed into an <code>int</code> (one character per byte, first character in the highest byte).
+ * Three-character v2.2 IDs are mapped to their v2.3/v2.4 equivalents when decoded by {@link #decode(int)}.
+ */
+final class ID3v2FrameId {
+	static final int APIC = 'A' << 24 | 'P' << 16 | 'I' << 8 | 'C';
+	static final int COMM = 'C' << 24 | 'O' << 16 | 'M' << 8 | 'M';
+	static final int TALB = 'T' << 24 | 'A' << 16 | 'L' << 8 | 'B';
+	static final int TCMP = 'T' << 24 | 'C' << 16 | 'M' << 8 | 'P';
+	static final int TCOM = 'T' << 24 | 'C' << 16 | 'O' << 8 | 'M';
+	static final int TCON = 'T' << 24 | 'C' << 16 | 'O' << 8 | 'N';
+	static final int TCOP = 'T' << 24 | 'C' << 16 | 'O' << 8 | 'P';
+	static final int TDRC = 'T' << 24 | 'D' << 16 | 'R' << 8 | 'C';
+	static final int TIT1 = 'T' << 24 | 'I' << 16 | 'T' << 8 | '1';
+	static final int TIT2 = 'T' << 24 | 'I' << 16 | 'T' << 8 | '2';
+	static final int TLEN = 'T' << 24 | 'L' << 16 | 'E' << 8 | 'N';
+	static final int TPE1 = 'T' << 24 | 'P' << 16 | 'E' << 8 | '1';
+	static final int TPE2 = 'T' << 24 | 'P' << 16 | 'E' << 8 | '2';
+	static final int TPOS = 'T' << 24 | 'P' << 16 | 'O' << 8 | 'S';
+	static final int TRCK = 'T' << 24 | 'R' << 16 | 'C' << 8 | 'K';
+	static final int TYER = 'T' << 24 | 'Y' << 16 | 'E' << 8 | 'R';
+	static final int USLT = 'U' << 24 | 'S' << 16 | 'L' << 8 | 'T';
+
+	/*
+	 * v2.2 IDs
+	 */
+	private static final int PIC = 'P' << 16 | 'I' << 8 | 'C';
+	private static final int COM = 'C' << 16 | 'O' << 8 | 'M';
+	private static final int TAL = 'T' << 16 | 'A' << 8 | 'L';
+	private static final int TCP = 'T' << 16 | 'C' << 8 | 'P';
+	private static final int TCM = 'T' << 16 | 'C' << 8 | 'M';
+	private static final int TCO = 'T' << 16 | 'C' << 8 | 'O';
+	private static final int TCR = 'T' << 16 | 'C' << 8 | 'R';
+	private static final int TT1 = 'T' << 16 | 'T' << 8 | '1';
+	private static final int TT2 = 'T' << 16 | 'T' << 8 | '2';
+	private static final int TLE = 'T' << 16 | 'L' << 8 | 'E';
+	private static final int TP1 = 'T' << 16 | 'P' << 8 | '1';
+	private static final int TP2 = 'T' << 16 | 'P' << 8 | '2';
+	private static final int TPA = 'T' << 16 | 'P' << 8 | 'A';
+	private static final int TRK = 'T' << 16 | 'R' << 8 | 'K';
+	private static final int TYE = 'T' << 16 | 'Y' << 8 | 'E';
+	private static final int ULT = 'U' << 16 | 'L' << 8 | 'T';
+
+	private ID3v2FrameId() {
+	}
+
+	/**
+	 * Map a v2.2 ID to its v2.3/v2.4 equivalent.
+	 * @param id packed ID as found in the tag
+	 * @return v2.3/v2.4 ID (or the given ID if it has no equivalent)
+	 */
+	static int decode(int id) {
+		switch (id) {
+		case PIC: return APIC;
+		case COM: return COMM;
+		case TAL: return TALB;
+		case TCP: return TCMP;
+		case TCM: return TCOM;
+		case TCO: return TCON;
+		case TCR: return TCOP;
+		case TT1: return TIT1;
+		case TT2: return TIT2;
+		case TLE: return TLEN;
+		case TP1: return TPE1;
+		case TP2: return TPE2;
+		case TPA: return TPOS;
+		case TRK: return TRCK;
+		case TYE: return TYER;
+		case ULT: return USLT;
+		default: return id;
+		}
+	}
+
+	/**
+	 * @param id packed ID
+	 * @param length number of characters (3 or 4)
+	 * @return <code>true</code> if all characters are upper case letters or digits
+	 */
+	static boolean isValid(int id, int length) {
+		for (int i = 0; i < length; i++) {
+			int c = (id >>> (i << 3)) & 0xFF;
+			if ((c < 'A' || c > 'Z') && (c < '0' || c > '9')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param id packed ID
+	 * @param length number of characters (3 or 4)
+	 * @return ID string
+	 */
+	static String toString(int id, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char)((id >>> ((length - 1 - i) << 3)) & 0xFF);
+		}
+		return new String(chars);
+	}
+}
@@ -17,6 +17,7 @@ package de.odysseus.ithaka.audioinfo.mp3;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,6 +26,23 @@ import de.odysseus.ithaka.audioinfo.AudioInfo;
 public class ID3v2Info extends AudioInfo {
 	static final Logger LOGGER = Logger.getLogger(ID3v2Info.class.getName());
 
+	/*
+	 * Frames evaluated by parseFrame(), sorted. Other frames are skipped without creating a frame body.
+	 */
+	private static final int[] PARSED_FRAMES = {
+		ID3v2FrameId.APIC, ID3v2FrameId.COMM, ID3v2FrameId.TALB, ID3v2FrameId.TCMP, ID3v2FrameId.TCOM, ID3v2FrameId.TCON,
+		ID3v2FrameId.TCOP, ID3v2FrameId.TDRC, ID3v2FrameId.TIT1, ID3v2FrameId.TIT2, ID3v2FrameId.TLEN, ID3v2FrameId.TPE1,
+		ID3v2FrameId.TPE2, ID3v2FrameId.TPOS, ID3v2FrameId.TRCK, ID3v2FrameId.TYER, ID3v2FrameId.USLT
+	};
+	static {
+		Arrays.sort(PARSED_FRAMES);
+	}
+
+	/**
+	 * Default size up to which tags (or frames of larger tags) are read into memory.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
 	static class AttachedPicture {
 		static final byte TYPE_OTHER = 0x00;
 		static final byte TYPE_COVER_FRONT = 0x03;
@@ -72,15 +90,29 @@ public class ID3v2Info extends AudioInfo {
 	}
 
 	public ID3v2Info(InputStream input, Level debugLevel) throws IOException, ID3v2Exception {
+		this(input, debugLevel, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Read the tag. Tags up to the given buffer size are read with a single bulk read and decoded from memory.
+	 * Larger tags (e.g. with big pictures) are streamed; frames up to the buffer size are still read in bulk.
+	 * @param input input stream
+	 * @param debugLevel log level
+	 * @param bufferSize buffer size (<code>0</code> to stream all frames)
+	 * @throws IOException
+	 * @throws ID3v2Exception
+	 */
+	public ID3v2Info(InputStream input, Level debugLevel, int bufferSize) throws IOException, ID3v2Exception {
 		this.debugLevel = debugLevel;
 		if (isID3v2StartPosition(input)) {
 			ID3v2TagHeader tagHeader = new  ID3v2TagHeader(input);
 			brand = "ID3";
 			version = String.format("2.%d.%d", tagHeader.getVersion(), tagHeader.getRevision());
-			ID3v2TagBody tagBody = tagHeader.tagBody(input);
+			ID3v2TagBody tagBody = tagHeader.tagBody(input, bufferSize);
+			ID3v2FrameHeader frameHeader = new ID3v2FrameHeader(); // reused for all frames
 			try {
 				while (tagBody.getRemainingLength() > 10) { // TODO > tag.minimumFrameSize()
-					ID3v2FrameHeader frameHeader = new ID3v2FrameHeader(tagBody);
+					frameHeader.read(tagBody);
 					if (frameHeader.isPadding()) { // we ran into padding
 						break;
 					}
@@ -90,7 +122,7 @@ public class ID3v2Info extends AudioInfo {
 						}
 						break;
 					}
-					if (frameHeader.isValid() && !frameHeader.isEncryption()) {
+					if (frameHeader.isValid() && !frameHeader.isEncryption() && isParsed(frameHeader.getId())) {
 						ID3v2FrameBody frameBody = tagBody.frameBody(frameHeader);
 						try {
 							parseFrame(frameBody);
@@ -99,10 +131,10 @@ public class ID3v2Info extends AudioInfo {
 								LOGGER.log(debugLevel, String.format("ID3 exception occured in frame %s: %s", frameHeader.getFrameId(), e.getMessage()));
 							}
 						} finally {
-							frameBody.getData().skipFully(frameBody.getRemainingLength());
+							frameBody.skipRemaining();
 						}
 					} else {
-						tagBody.getData().skipFully(frameHeader.getBodySize());
+						tagBody.skip(frameHeader.getBodySize());
 					}
 				}
 			} catch (ID3v2Exception e) {
@@ -110,20 +142,24 @@ public class ID3v2Info extends AudioInfo {
 					LOGGER.log(debugLevel, "ID3 exception occured: " + e.getMessage());
 				}
 			}
-			tagBody.getData().skipFully(tagBody.getRemainingLength());
+			tagBody.skipRemaining();
 			if (tagHeader.getFooterSize() > 0) {
 				input.skip(tagHeader.getFooterSize());
 			}
 		}
 	}
 
-	void parseFrame(ID3v2FrameBody frame) throws IOException, ID3v2Exception {
+	/**
+	 * Evaluate a frame. Frame IDs handled here must be listed in <code>PARSED_FRAMES</code>.
+	 * @param frame frame body
+	 * @return <code>false</code> if frames with the frame's ID are not evaluated
+	 */
+	boolean parseFrame(ID3v2FrameBody frame) throws IOException, ID3v2Exception {
 		if (LOGGER.isLoggable(debugLevel)) {
 			LOGGER.log(debugLevel, "Parsing frame: " + frame.getFrameHeader().getFrameId());
 		}
-		switch (frame.getFrameHeader().getFrameId()) {
-		case "PIC":
-		case "APIC": // cover: prefer TYPE_COVER_FRONT, then TYPE_OTHER, then anything else
+		switch (frame.getFrameHeader().getId()) {
+		case ID3v2FrameId.APIC: // cover: prefer TYPE_COVER_FRONT, then TYPE_OTHER, then anything else
 			if (cover == null || coverPictureType != AttachedPicture.TYPE_COVER_FRONT) {
 				AttachedPicture picture = parseAttachedPictureFrame(frame);
 				if (cover == null || picture.type == AttachedPicture.TYPE_COVER_FRONT || picture.type == AttachedPicture.TYPE_OTHER) {
@@ -132,27 +168,22 @@ public class ID3v2Info extends AudioInfo {
 				}
 			}
 			break;
-		case "COM":
-		case "COMM":
+		case ID3v2FrameId.COMM:
 			CommentOrUnsynchronizedLyrics comm = parseCommentOrUnsynchronizedLyricsFrame(frame);
 			if (comment == null || comm.description == null || "".equals(comm.description)) { // prefer "default" comment (without description)
 				comment = comm.text;
 			}
 			break;
-		case "TAL":
-		case "TALB":
+		case ID3v2FrameId.TALB:
 			album = parseTextFrame(frame);
 			break;
-		case "TCP":
-		case "TCMP":
+		case ID3v2FrameId.TCMP:
 			compilation = "1".equals(parseTextFrame(frame));
 			break;
-		case "TCM":
-		case "TCOM":
+		case ID3v2FrameId.TCOM:
 			composer = parseTextFrame(frame);
 			break;
-		case "TCO":
-		case "TCON":
+		case ID3v2FrameId.TCON:
 			String tcon = parseTextFrame(frame);
 			if (tcon.length() > 0) {
 				genre = tcon;
@@ -177,11 +208,10 @@ public class ID3v2Info extends AudioInfo {
 				}
 			}
 			break;
-		case "TCR":
-		case "TCOP":
+		case ID3v2FrameId.TCOP:
 			copyright = parseTextFrame(frame);
 			break;
-		case "TDRC": // v2.4, replaces TYER
+		case ID3v2FrameId.TDRC: // v2.4, replaces TYER
 			String tdrc = parseTextFrame(frame);
 			if (tdrc.length() >= 4) {
 				try {
@@ -193,8 +223,7 @@ public class ID3v2Info extends AudioInfo {
 				}
 			}
 			break;
-		case "TLE":
-		case "TLEN":
+		case ID3v2FrameId.TLEN:
 			String tlen = parseTextFrame(frame);
 			try {
 				duration = Long.valueOf(tlen);
@@ -204,16 +233,13 @@ public class ID3v2Info extends AudioInfo {
 				}
 			}
 			break;
-		case "TP1":
-		case "TPE1":
+		case ID3v2FrameId.TPE1:
 			artist = parseTextFrame(frame);
 			break;
-		case "TP2":
-		case "TPE2":
+		case ID3v2FrameId.TPE2:
 			albumArtist = parseTextFrame(frame);
 			break;
-		case "TPA":
-		case "TPOS":
+		case ID3v2FrameId.TPOS:
 			String tpos = parseTextFrame(frame);
 			if (tpos.length() > 0) {
 				int index = tpos.indexOf('/');
@@ -243,8 +269,7 @@ public class ID3v2Info extends AudioInfo {
 				}
 			}
 			break;
-		case "TRK":
-		case "TRCK":
+		case ID3v2FrameId.TRCK:
 			String trck = parseTextFrame(frame);
 			if (trck.length() > 0) {
 				int index = trck.indexOf('/');
@@ -274,16 +299,13 @@ public class ID3v2Info extends AudioInfo {
 				}
 			}
 			break;
-		case "TT1":
-		case "TIT1":
+		case ID3v2FrameId.TIT1:
 			grouping = parseTextFrame(frame);
 			break;
-		case "TT2":
-		case "TIT2":
+		case ID3v2FrameId.TIT2:
 			title = parseTextFrame(frame);
 			break;
-		case "TYE":
-		case "TYER":
+		case ID3v2FrameId.TYER:
 			String tyer = parseTextFrame(frame);
 			if (tyer.length() > 0) {
 				try {
@@ -295,15 +317,23 @@ public class ID3v2Info extends AudioInfo {
 				}
 			}
 			break;
-		case "ULT":
-		case "USLT":
+		case ID3v2FrameId.USLT:
 			if (lyrics == null) {
 				lyrics = parseCommentOrUnsynchronizedLyricsFrame(frame).text;
 			}
 			break;
 		default:
-			break;
+			return false;
 		}
+		return true;
+	}
+
+	/**
+	 * @param id packed frame ID (see {@link ID3v2FrameId})
+	 * @return <code>true</code> if {@link #parseFrame(ID3v2FrameBody)} evaluates frames with the given ID
+	 */
+	static boolean isParsed(int id) {
+		return Arrays.binarySearch(PARSED_FRAMES, id) >= 0;
 	}
 
 	String parseTextFrame(ID3v2FrameBody frame) throws IOException, ID3v2Exception {
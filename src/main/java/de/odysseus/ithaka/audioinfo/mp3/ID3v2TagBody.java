@@ -15,67 +15,159 @@
  */
 package de.odysseus.ithaka.audioinfo.mp3;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.InflaterInputStream;
+import java.nio.ByteBuffer;
 
+import de.odysseus.ithaka.audioinfo.util.ByteBufferInputStream;
+import de.odysseus.ithaka.audioinfo.util.PositionInputStream;
 import de.odysseus.ithaka.audioinfo.util.RangeInputStream;
 
+/**
+ * Tag body, i.e. the frames area of a tag. The body is either read from a stream, or from a heap buffer
+ * holding the whole body (read with a single bulk read). When streaming, frame bodies up to the buffer
+ * size are read into a buffer, too. Buffered frame headers and bodies are decoded by index arithmetic.
+ * Unsynchronisation is reversed in place (buffered) or on the fly (streamed).
+ */
 public class ID3v2TagBody {
-	private final RangeInputStream input;
+	private final RangeInputStream input; // null if buffered
+	private final PositionInputStream stream; // frames stream (input, or reversing unsynchronisation of input)
+	private final ByteBuffer buffer; // null if streamed
+	private final long position;
 	private final ID3v2TagHeader tagHeader;
 	private final ID3v2DataInput data;
+	private final int bufferSize;
 
 	ID3v2TagBody(InputStream delegate, long position, int length, ID3v2TagHeader tagHeader) throws IOException {
+		this(delegate, position, length, tagHeader, 0, false);
+	}
+
+	/**
+	 * Create streamed tag body.
+	 * @param delegate input stream, positioned after the tag header
+	 * @param position tag body position
+	 * @param length tag body length (unsynchronised)
+	 * @param tagHeader tag header
+	 * @param bufferSize size up to which frame bodies are buffered
+	 * @param unsynchronization <code>true</code> if the tag is unsynchronised
+	 */
+	ID3v2TagBody(InputStream delegate, long position, int length, ID3v2TagHeader tagHeader, int bufferSize, boolean unsynchronization) throws IOException {
 		this.input = new RangeInputStream(delegate, position, length);
-		this.data = new ID3v2DataInput(input);
+		this.stream = unsynchronization ? new PositionInputStream(new ID3v2UnsyncInputStream(input), position) : input;
+		this.buffer = null;
+		this.position = position;
+		this.data = new ID3v2DataInput(stream);
 		this.tagHeader = tagHeader;
+		this.bufferSize = bufferSize;
 	}
-	
+
+	/**
+	 * Create buffered tag body.
+	 * @param buffer heap buffer holding the body's bytes from its position to its limit
+	 */
+	ID3v2TagBody(ByteBuffer buffer, long position, ID3v2TagHeader tagHeader) {
+		this.input = null;
+		this.stream = null;
+		this.buffer = buffer.slice();
+		this.position = position;
+		this.data = new ID3v2DataInput(new ByteBufferInputStream(this.buffer));
+		this.tagHeader = tagHeader;
+		this.bufferSize = 0;
+	}
+
 	public ID3v2DataInput getData() {
 		return data;
 	}
 	
+	/**
+	 * @return buffer holding the remaining body bytes, or <code>null</code> if the body is streamed
+	 */
+	ByteBuffer getBuffer() {
+		return buffer;
+	}
+
 	public long getPosition() {
-		return input.getPosition();
+		return buffer != null ? position + buffer.position() : stream.getPosition();
 	}
 	
+	/**
+	 * Answer the remaining length. For a streamed, unsynchronised tag, this is the remaining unsynchronised
+	 * length, i.e. an upper bound.
+	 * @return remaining length
+	 */
 	public long getRemainingLength() {
-		return input.getRemainingLength();
+		return buffer != null ? buffer.remaining() : input.getRemainingLength();
 	}
 	
 	public ID3v2TagHeader getTagHeader() {
 		return tagHeader;
 	}
-	
+
+	/**
+	 * Skip the given number of bytes.
+	 * @param length number of bytes
+	 * @throws IOException
+	 */
+	void skip(long length) throws IOException {
+		if (buffer != null && length <= buffer.remaining()) {
+			buffer.position(buffer.position() + (int)length);
+		} else {
+			data.skipFully(length);
+		}
+	}
+
+	/**
+	 * Skip to the end of the tag body.
+	 * @throws IOException
+	 */
+	void skipRemaining() throws IOException {
+		if (buffer != null) {
+			buffer.position(buffer.limit());
+		} else {
+			new ID3v2DataInput(input).skipFully(input.getRemainingLength());
+		}
+	}
+
 	public ID3v2FrameBody frameBody(ID3v2FrameHeader frameHeader) throws IOException, ID3v2Exception {
+		if (frameHeader.isEncryption()) {
+			throw new ID3v2Exception("Frame encryption is not supported");
+		}
 		int dataLength = frameHeader.getBodySize();
-		InputStream input = this.input;
-		if (frameHeader.isUnsynchronization()) {
-			byte[] bytes = data.readFully(frameHeader.getBodySize());
-			boolean ff = false;
-			int len = 0;
-			for (byte b : bytes) {
-				if (!ff || b != 0) {
-					bytes[len++] = b;
+		ByteBuffer body = null;
+		if (buffer != null) {
+			if (dataLength > buffer.remaining()) {
+				throw new ID3v2Exception("ID3 frame claims to extend frames area");
+			}
+			body = buffer.slice();
+			body.limit(dataLength);
+			buffer.position(buffer.position() + dataLength);
+		} else if (dataLength <= bufferSize || frameHeader.isUnsynchronization() && frameHeader.getDataLengthIndicator() <= 0) {
+			body = ByteBuffer.wrap(data.readFully(dataLength)); // buffer to determine the decoded length
+		}
+		if (body == null) {
+			if (frameHeader.isUnsynchronization() || frameHeader.isCompression()) { // the data length indicator tells us the decoded length
+				RangeInputStream frameInput = new RangeInputStream(stream, 0, dataLength);
+				InputStream input = frameInput;
+				if (frameHeader.isUnsynchronization()) {
+					input = new ID3v2UnsyncInputStream(input);
 				}
-				ff = (b == 0xFF);
+				if (frameHeader.isCompression()) {
+					input = ID3v2FrameBody.inflaterInputStream(input);
+				}
+				return new ID3v2FrameBody(input, frameHeader.getHeaderSize(), frameHeader.getDataLengthIndicator(), tagHeader, frameHeader, frameInput);
 			}
-			dataLength = len;
-			input = new ByteArrayInputStream(bytes, 0, len);
+			return new ID3v2FrameBody(stream, frameHeader.getHeaderSize(), dataLength, tagHeader, frameHeader);
 		}
-		if (frameHeader.isEncryption()) {
-			throw new ID3v2Exception("Frame encryption is not supported");
+		if (frameHeader.isUnsynchronization()) {
+			dataLength = ID3v2UnsyncInputStream.decode(body.array(), body.arrayOffset() + body.position(), body.remaining());
+			body.limit(body.position() + dataLength);
 		}
-		if (frameHeader.isCompression()) {
-			dataLength = frameHeader.getDataLengthIndicator();
-			input = new InflaterInputStream(input);
+		if (frameHeader.isCompression()) { // inflated on demand
+			return new ID3v2FrameBody(body, frameHeader.getDataLengthIndicator(), frameHeader.getHeaderSize(), tagHeader, frameHeader);
 		}
-		return new ID3v2FrameBody(input, frameHeader.getHeaderSize(), dataLength, tagHeader, frameHeader);
+		return new ID3v2FrameBody(body, frameHeader.getHeaderSize(), tagHeader, frameHeader);
 	}
 
-
 	public String toString() {
 		return "id3v2tag[pos=" + getPosition() + ", " + getRemainingLength() + " left]";
 	}
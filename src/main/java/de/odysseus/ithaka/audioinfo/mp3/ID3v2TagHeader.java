@@ -15,9 +15,9 @@
  */
 package de.odysseus.ithaka.audioinfo.mp3;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import de.odysseus.ithaka.audioinfo.util.PositionInputStream;
 
@@ -139,23 +139,35 @@ public class ID3v2TagHeader {
 	}
 	
 	public ID3v2TagBody tagBody(InputStream input) throws IOException, ID3v2Exception {
+		return tagBody(input, 0);
+	}
+
+	/**
+	 * Create the tag body. If the body size doesn't exceed the given buffer size, the body is read
+	 * with a single bulk read. Otherwise, it is streamed and frame bodies up to the buffer size are buffered.
+	 * @param input input stream, positioned after the tag header
+	 * @param bufferSize buffer size
+	 * @return tag body
+	 * @throws IOException
+	 * @throws ID3v2Exception
+	 */
+	ID3v2TagBody tagBody(InputStream input, int bufferSize) throws IOException, ID3v2Exception {
 		if (compression) {
 			throw new ID3v2Exception("Tag compression is not supported");
 		}
 		if (version < 4 && unsynchronization) {
 			assert footerSize == 0;
-			byte[] bytes = new ID3v2DataInput(input).readFully(totalTagSize - headerSize);
-			boolean ff = false;
-			int len = 0;
-			for (byte b : bytes) {
-				if (!ff || b != 0) {
-					bytes[len++] = b;
-				}
-				ff = (b == 0xFF);
+			if (totalTagSize - headerSize > bufferSize) {
+				return new ID3v2TagBody(input, headerSize, totalTagSize - headerSize, this, bufferSize, true);
 			}
-			return new ID3v2TagBody(new ByteArrayInputStream(bytes, 0, len), headerSize, len, this);
+			byte[] bytes = new ID3v2DataInput(input).readFully(totalTagSize - headerSize);
+			int len = ID3v2UnsyncInputStream.decode(bytes, 0, bytes.length);
+			return new ID3v2TagBody(ByteBuffer.wrap(bytes, 0, len), headerSize, this);
+		} else if (totalTagSize - headerSize - footerSize <= bufferSize) {
+			byte[] bytes = new ID3v2DataInput(input).readFully(totalTagSize - headerSize - footerSize);
+			return new ID3v2TagBody(ByteBuffer.wrap(bytes), headerSize, this);
 		} else {
-			return new ID3v2TagBody(input, headerSize, totalTagSize - headerSize - footerSize, this);
+			return new ID3v2TagBody(input, headerSize, totalTagSize - headerSize - footerSize, this, bufferSize, false);
 		}
 	}
 	
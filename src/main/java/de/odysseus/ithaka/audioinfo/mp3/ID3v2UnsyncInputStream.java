@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream reversing ID3v2 unsynchronisation, i.e. dropping the <code>0x00</code> byte of every
+ * <code>0xFF 0x00</code> sequence on the fly. Bytes are decoded in the caller's buffer, so memory use is bounded.
+ */
+public class ID3v2UnsyncInputStream extends FilterInputStream {
+	private static final int SKIP_BUFFER_SIZE = 4096;
+
+	/**
+	 * Reverse unsynchronisation in place.
+	 * @param bytes buffer
+	 * @param offset offset of the unsynchronised data
+	 * @param length length of the unsynchronised data
+	 * @return length of the decoded data (starting at <code>offset</code>)
+	 */
+	static int decode(byte[] bytes, int offset, int length) {
+		return decode(bytes, offset, length, false);
+	}
+
+	private static int decode(byte[] bytes, int offset, int length, boolean ff) {
+		int end = offset + length;
+		int index = offset;
+		for (int i = offset; i < end; i++) {
+			byte b = bytes[i];
+			if (!ff || b != 0) {
+				bytes[index++] = b;
+			}
+			ff = b == (byte)0xFF;
+		}
+		return index - offset;
+	}
+
+	private boolean ff; // last byte read from the delegate was 0xFF
+	private byte[] skipBuffer;
+
+	public ID3v2UnsyncInputStream(InputStream delegate) {
+		super(delegate);
+	}
+
+	@Override
+	public int read() throws IOException {
+		while (true) {
+			int b = super.read();
+			if (b < 0) {
+				return b;
+			}
+			boolean skip = ff && b == 0;
+			ff = b == 0xFF;
+			if (!skip) {
+				return b;
+			}
+		}
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (true) {
+			int count = super.read(b, off, len);
+			if (count <= 0) {
+				return count;
+			}
+			boolean last = b[off + count - 1] == (byte)0xFF;
+			count = decode(b, off, count, ff);
+			ff = last;
+			if (count > 0) { // may be zero if we read a single 0x00 following 0xFF
+				return count;
+			}
+		}
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (skipBuffer == null) {
+			skipBuffer = new byte[SKIP_BUFFER_SIZE];
+		}
+		long total = 0;
+		while (total < n) {
+			int count = read(skipBuffer, 0, (int)Math.min(n - total, skipBuffer.length));
+			if (count < 0) {
+				break;
+			}
+			total += count;
+		}
+		return total;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return 0; // decoded length is unknown
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+}
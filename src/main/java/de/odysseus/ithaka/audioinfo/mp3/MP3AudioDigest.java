@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * Digest of the audio frame bytes (see {@link MP3Options#setDigestAlgorithm(String)}).
+ * Either all audio frames are hashed, or the frames starting within windows, which are placed at a fixed stride,
+ * relative to the first audio frame. Since tags don't affect frame positions relative to the first audio frame,
+ * the digest doesn't change when tags are edited.
+ */
+final class MP3AudioDigest {
+	private final MessageDigest digest;
+	private final long origin;
+	private final long stride;
+	private final int windowSize;
+
+	/**
+	 * @param digest message digest
+	 * @param origin position of the first audio frame (following a Xing/Info/VBRI header frame)
+	 * @param stride window stride or <code>0</code> to hash all frames
+	 * @param windowSize window size
+	 */
+	MP3AudioDigest(MessageDigest digest, long origin, long stride, int windowSize) {
+		this.digest = digest;
+		this.origin = origin;
+		this.stride = stride;
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * @return <code>true</code> if only frames within windows are hashed
+	 */
+	boolean isSampled() {
+		return stride > 0;
+	}
+
+	/**
+	 * @param position frame position
+	 * @return <code>true</code> if the frame at the given position is hashed
+	 */
+	boolean isInWindow(long position) {
+		return position >= origin && (stride == 0 || (position - origin) % stride < windowSize);
+	}
+
+	/**
+	 * Answer the start of the window containing the given position or else the start of the next window.
+	 * @param position position
+	 * @return window start
+	 */
+	long getWindowStart(long position) {
+		if (position < origin) {
+			return origin;
+		}
+		if (stride == 0) {
+			return position;
+		}
+		long start = position - (position - origin) % stride;
+		return position - start < windowSize ? start : start + stride;
+	}
+
+	/**
+	 * Hash a frame, if it is located within a window.
+	 * @param position frame position
+	 * @param data frame bytes
+	 */
+	void update(long position, ByteBuffer data) {
+		if (isInWindow(position)) {
+			digest.update(data);
+		}
+	}
+
+	/**
+	 * @return digest value
+	 */
+	byte[] digest() {
+		return digest.digest();
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Integrity report of an MP3 stream, collected while scanning the audio frames
+ * (see {@link MP3Options#setAudit(boolean)}).
+ * Issues are reported with the file offset at which they have been detected.
+ */
+public class MP3Audit {
+	/**
+	 * Maximum number of issues kept by the report. Further issues are counted only.
+	 */
+	public static final int MAX_ISSUES = 100;
+
+	public enum Type {
+		CRC_ERROR,			// CRC of a protected Layer III frame doesn't match
+		SYNC_LOSS,			// frame sync lost, scan resumed at the next valid frame
+		TRUNCATED_FRAME,	// last frame extends beyond the end of the file
+		BITRATE_ANOMALY,	// bitrate changes in a stream declared CBR by its Info header
+		VBR_HEADER_MISMATCH	// frame count from Xing/VBRI header differs from actual count
+	}
+
+	public static class Issue {
+		private final Type type;
+		private final long offset;
+		private final String message;
+
+		Issue(Type type, long offset, String message) {
+			this.type = type;
+			this.offset = offset;
+			this.message = message;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		/**
+		 * @return file offset of the frame (or position) at which the issue has been detected
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return message or <code>null</code>
+		 */
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String toString() {
+			return type + "@" + offset + (message != null ? ": " + message : "");
+		}
+	}
+
+	private final MP3Frame.Header firstHeader;
+	private final MP3VBRHeader vbrHeader;
+	private final List<Issue> issues = new ArrayList<Issue>();
+	private final int[] counts = new int[Type.values().length];
+
+	private final long startPosition;
+	private long endPosition;
+	private long frames;
+	private long protectedFrames;
+	private boolean vbr;
+
+	/**
+	 * @param firstHeader header of the first frame
+	 * @param vbrHeader VBR header of the first frame or <code>null</code>
+	 * @param startPosition position of the first frame
+	 */
+	MP3Audit(MP3Frame.Header firstHeader, MP3VBRHeader vbrHeader, long startPosition) {
+		this.firstHeader = firstHeader;
+		this.vbrHeader = vbrHeader;
+		this.startPosition = startPosition;
+		this.endPosition = startPosition;
+	}
+
+	void add(Type type, long offset, String message) {
+		counts[type.ordinal()]++;
+		if (issues.size() < MAX_ISSUES) {
+			issues.add(new Issue(type, offset, message));
+		}
+	}
+
+	/**
+	 * Check an audio frame.
+	 * @param frame frame (carrying at least its checksum bytes if CRC protected)
+	 * @param position frame position
+	 */
+	void check(MP3Frame frame, long position) {
+		MP3Frame.Header header = frame.getHeader();
+		frames++;
+		if (header.getChecksumSize() > 0) {
+			protectedFrames++;
+			if (frame.isChecksumError()) {
+				add(Type.CRC_ERROR, position, null);
+			}
+		}
+		int bitrate = header.getBitrate();
+		if (bitrate != firstHeader.getBitrate()) {
+			if (vbrHeader != null && vbrHeader.getType() == MP3VBRHeader.Type.INFO) {
+				add(Type.BITRATE_ANOMALY, position, "bitrate " + bitrate + " in CBR stream (" + firstHeader.getBitrate() + ")");
+			}
+			vbr = true;
+		}
+		endPosition = position + frame.getSize();
+	}
+
+	/**
+	 * Finish the report after the last frame.
+	 */
+	void finish() {
+		if (vbrHeader != null && vbrHeader.getFrames() > 0 && vbrHeader.getFrames() != frames) {
+			add(Type.VBR_HEADER_MISMATCH, startPosition, "header frames " + vbrHeader.getFrames() + ", actual frames " + frames);
+		}
+	}
+
+	/**
+	 * @return position of the first audio frame
+	 */
+	public long getStartPosition() {
+		return startPosition;
+	}
+
+	/**
+	 * @return position after the last audio frame
+	 */
+	public long getEndPosition() {
+		return endPosition;
+	}
+
+	/**
+	 * @return number of audio frames (excluding a Xing/Info/VBRI header frame)
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return number of CRC protected audio frames, which have been verified
+	 */
+	public long getProtectedFrames() {
+		return protectedFrames;
+	}
+
+	/**
+	 * @return <code>true</code> if the bitrate varies
+	 */
+	public boolean isVBR() {
+		return vbr;
+	}
+
+	/**
+	 * @return issues in stream order (at most {@link #MAX_ISSUES})
+	 */
+	public List<Issue> getIssues() {
+		return Collections.unmodifiableList(issues);
+	}
+
+	/**
+	 * @param type issue type
+	 * @return number of issues of the given type (may be more than reported by {@link #getIssues()})
+	 */
+	public int getIssueCount(Type type) {
+		return counts[type.ordinal()];
+	}
+
+	/**
+	 * @return <code>true</code> if no issues have been found
+	 */
+	public boolean isValid() {
+		for (int count : counts) {
+			if (count > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[frames=%d, protected=%d, issues=%s]", getClass().getSimpleName(), frames, protectedFrames, issues);
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.odysseus.ithaka.audioinfo.util.RandomAccessSource;
+
+/**
+ * MP3 input working on a random access source (e.g. a memory mapped file).
+ * Frames are read by absolute indexing into the mapped buffer, i.e. without stream layering
+ * and <code>mark/reset</code>. Sources larger than 2GB are mapped in windows.
+ */
+class MP3BufferInput implements MP3Info.FrameReader {
+	private static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+	private final RandomAccessSource source;
+	private final long length;
+	private final long endPosition; // frame headers must end before this position (e.g. start of ID3v1 tag)
+
+	private ByteBuffer window;
+	private long windowPosition;
+
+	private long position;
+	private ByteBuffer frameData;
+	private long maxResyncDistance;
+
+	/**
+	 * @param source source
+	 * @param endPosition position before which frame headers must end
+	 * @throws IOException
+	 */
+	MP3BufferInput(RandomAccessSource source, long endPosition) throws IOException {
+		this.source = source;
+		this.length = source.length();
+		this.endPosition = Math.min(endPosition, length);
+	}
+
+	/**
+	 * Create an input on the same file, with its own window and position.
+	 * Use this to read a file from multiple threads.
+	 * @param input input to copy
+	 */
+	MP3BufferInput(MP3BufferInput input) {
+		this.source = input.source;
+		this.length = input.length;
+		this.endPosition = input.endPosition;
+		this.maxResyncDistance = input.maxResyncDistance;
+	}
+
+	/**
+	 * Answer the mapped window containing the given range. The range is expected to be
+	 * within the file. The range starts at index <code>position - windowPosition</code>.
+	 */
+	private ByteBuffer window(long position, int length) throws IOException {
+		if (window == null || position < windowPosition || position + length > windowPosition + window.limit()) {
+			window = source.map(position, (int)Math.min(MAX_WINDOW_SIZE, this.length - position));
+			windowPosition = position;
+		}
+		return window;
+	}
+
+	/**
+	 * Answer a buffer view of the given range.
+	 * @param position start position
+	 * @param length range length
+	 * @return buffer, positioned at the start of the range
+	 * @throws IOException
+	 */
+	ByteBuffer slice(long position, int length) throws IOException {
+		ByteBuffer buffer = window(position, length).duplicate();
+		int index = (int)(position - windowPosition);
+		buffer.limit(index + length);
+		buffer.position(index);
+		return buffer;
+	}
+
+	/**
+	 * @return file length
+	 */
+	long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return position before which frame headers must end
+	 */
+	long getEndPosition() {
+		return endPosition;
+	}
+
+	/**
+	 * @param maxResyncDistance maximum number of bytes searched by {@link #readFirstFrame()}, or <code>0</code> if unlimited
+	 */
+	void setMaxResyncDistance(long maxResyncDistance) {
+		this.maxResyncDistance = maxResyncDistance;
+	}
+
+	@Override
+	public long getPosition() {
+		return position;
+	}
+
+	@Override
+	public void seek(long position) {
+		this.position = position;
+	}
+
+	/**
+	 * Searches for an audio frame with a compatible follow-up header, starting at the current position.
+	 * This works exactly like {@link MP3Info#readFirstFrame(MP3Input)}: the follow-up header is checked
+	 * before the frame is copied, so false syncs cost a constant amount of work.
+	 * @return frame or <code>null</code>
+	 */
+	@Override
+	public MP3Frame readFirstFrame() throws IOException {
+		long p = position;
+		long resyncLimit = MP3Info.resyncLimit(p, maxResyncDistance);
+		while (p + 4 <= endPosition && p < resyncLimit) {
+			ByteBuffer buffer = window(p, 4);
+			int index = (int)(p - windowPosition);
+			int limit = (int)(Math.min(windowPosition + buffer.limit(), endPosition) - windowPosition) - 3;
+			index = MP3Sync.find(buffer, index, limit + 1);
+			if (index < 0) { // continue with next window (or quit)
+				p = windowPosition + limit;
+				continue;
+			}
+			p = windowPosition + index;
+			if (p >= resyncLimit) {
+				break;
+			}
+			MP3Frame.Header header = MP3Frame.Header.tryDecode(buffer.get(index + 1) & 0xFF, buffer.get(index + 2) & 0xFF, buffer.get(index + 3) & 0xFF);
+			if (header != null) { // we have a candidate
+				int frameSize = header.getFrameSize();
+				if (p + frameSize > length) {
+					return null;
+				}
+				int b1 = buffer.get(index + 1) & 0xFF;
+				long next = p + frameSize;
+				if (isFollowedBy(header, b1, next) && !isChecksumError(header, p)) {
+					byte[] frameBytes = new byte[frameSize];
+					slice(p, frameSize).get(frameBytes);
+					position = next;
+					return new MP3Frame(header, frameBytes);
+				}
+			}
+			/*
+			 * seems to be a false sync...
+			 */
+			p++;
+		}
+		return null;
+	}
+
+	/**
+	 * Check the header following a candidate frame.
+	 * @param header candidate frame header
+	 * @param b1 candidate frame's second byte
+	 * @param next position of the follow-up header
+	 * @return <code>true</code> if there's a compatible follow-up header or if the audio region ends
+	 */
+	private boolean isFollowedBy(MP3Frame.Header header, int b1, long next) throws IOException {
+		if (next + 2 > endPosition) {
+			return true;
+		}
+		ByteBuffer buffer = window(next, 2);
+		int index = (int)(next - windowPosition);
+		if (buffer.get(index) == (byte)0xFF && (buffer.get(index + 1) & 0xFE) == (b1 & 0xFE)) { // quick check: version & layer
+			if (next + 4 > endPosition) {
+				return true;
+			}
+			buffer = window(next, 4);
+			index = (int)(next - windowPosition);
+			MP3Frame.Header nextHeader = MP3Frame.Header.tryDecode(buffer.get(index + 1) & 0xFF, buffer.get(index + 2) & 0xFF, buffer.get(index + 3) & 0xFF);
+			return nextHeader != null && nextHeader.isCompatible(header);
+		}
+		return false;
+	}
+
+	/**
+	 * Verify a candidate frame's CRC, copying the checksum bytes only.
+	 */
+	private boolean isChecksumError(MP3Frame.Header header, long p) throws IOException {
+		int checksumSize = header.getChecksumSize();
+		if (checksumSize == 0 || checksumSize > header.getFrameSize()) {
+			return false;
+		}
+		byte[] checksumBytes = new byte[checksumSize];
+		slice(p, checksumSize).get(checksumBytes);
+		return new MP3Frame(header, checksumBytes).isChecksumError();
+	}
+
+	/**
+	 * Reads the header of the audio frame at the current position and checks it for compatibility
+	 * with the previous frame's header. If compatible, the frame is skipped and a header-only
+	 * frame is returned.
+	 * @param previousFrame previous frame
+	 * @return next frame or <code>null</code>
+	 */
+	@Override
+	public MP3Frame readNextFrame(MP3Frame previousFrame) throws IOException {
+		return readNextFrame(previousFrame, false, false);
+	}
+
+	/**
+	 * Like {@link #readNextFrame(MP3Frame)}, but if requested, a CRC protected frame keeps its checksum bytes.
+	 * If requested, the frame data is provided as a read-only view of the mapped file (without copying).
+	 * If the frame is truncated by the end of the file, we move to the end of the file.
+	 * @param previousFrame previous frame
+	 * @param checksum whether to keep the checksum bytes of CRC protected frames
+	 * @param data whether to provide the frame data
+	 * @return next frame or <code>null</code>
+	 */
+	@Override
+	public MP3Frame readNextFrame(MP3Frame previousFrame, boolean checksum, boolean data) throws IOException {
+		long p = position;
+		if (p + 4 > endPosition) {
+			return null;
+		}
+		ByteBuffer buffer = window(p, 4);
+		int index = (int)(p - windowPosition);
+		if (buffer.get(index) == (byte)0xFF) {
+			int b1 = buffer.get(index + 1) & 0xFF;
+			if ((b1 & 0xE0) == 0xE0) { // first 11 bits should be 1
+				MP3Frame.Header header = MP3Frame.Header.tryDecode(b1, buffer.get(index + 2) & 0xFF, buffer.get(index + 3) & 0xFF);
+				if (header != null && header.isCompatible(previousFrame.getHeader())) {
+					if (p + header.getFrameSize() > length) {
+						position = length;
+						return null;
+					}
+					byte[] checksumBytes = null;
+					if (checksum && header.getChecksumSize() > 0) {
+						checksumBytes = new byte[header.getChecksumSize()];
+						slice(p, checksumBytes.length).get(checksumBytes);
+					}
+					if (data) {
+						frameData = slice(p, header.getFrameSize()).slice().asReadOnlyBuffer();
+					}
+					position = p + header.getFrameSize();
+					return new MP3Frame(header, checksumBytes);
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public ByteBuffer getFrameData() {
+		return frameData;
+	}
+
+	@Override
+	public String toString() {
+		return "mp3buffer[pos=" + position + "]";
+	}
+}
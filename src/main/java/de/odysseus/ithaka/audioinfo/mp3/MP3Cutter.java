@@ -0,0 +1,278 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * Frame-accurate MP3 cutting without re-encoding.
+ * The audio frames of a file are scanned once; clips are made of whole frames and copied from the
+ * file channel to the output by {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+ * Layer III frames may use data from preceding frames (bit reservoir). A clip therefore starts
+ * with the preceding frames holding the first frame's main data. These frames are decoded and played
+ * as normal audio (only the very first one may be decoded incompletely), so a clip may start up to a few
+ * frames (tens of milliseconds) before the requested time. Frame counts written to the Xing header include them.
+ * Clips of compatible streams written without ID3v2 tag and Xing header may be concatenated (spliced).
+ */
+public class MP3Cutter {
+	private static final int XING_SIZE = 16; // "Xing"/"Info", flags, frames, bytes
+	private static final int XING_FLAGS = 0x03; // frames and bytes
+
+	private final FileChannel channel;
+	private final MP3Info info;
+
+	private int frames;
+	private long[] offsets = new long[1024];
+	private MP3Frame.Header[] headers = new MP3Frame.Header[1024];
+
+	private byte[] id3v2Tag;
+	private boolean xingHeader = true;
+
+	/**
+	 * Scan the audio frames of the given file. Frames following a sync loss are included.
+	 * The channel's position is not used.
+	 * @param channel file channel
+	 * @throws IOException
+	 * @throws ID3v2Exception
+	 * @throws MP3Exception if there are no audio frames
+	 */
+	public MP3Cutter(FileChannel channel) throws IOException, ID3v2Exception, MP3Exception {
+		this.channel = channel;
+		MP3Options options = new MP3Options();
+		options.setResync(true);
+		options.addFrameVisitor(new MP3FrameVisitor() {
+			@Override
+			public boolean isDataRequired() {
+				return false;
+			}
+			@Override
+			public void visitFrame(MP3Frame.Header header, long offset, int size, ByteBuffer data) {
+				add(header, offset);
+			}
+		});
+		this.info = new MP3Info(channel, Level.FINEST, options);
+		if (frames == 0) {
+			throw new MP3Exception("No audio frame");
+		}
+	}
+
+	private void add(MP3Frame.Header header, long offset) {
+		if (frames == offsets.length) {
+			offsets = Arrays.copyOf(offsets, frames * 2);
+			headers = Arrays.copyOf(headers, frames * 2);
+		}
+		offsets[frames] = offset;
+		headers[frames] = header;
+		frames++;
+	}
+
+	/**
+	 * @return info read while scanning the file
+	 */
+	public MP3Info getInfo() {
+		return info;
+	}
+
+	/**
+	 * @return number of audio frames (not including a Xing/Info/VBRI header frame)
+	 */
+	public int getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return ID3v2 tag written in front of clips or <code>null</code>
+	 */
+	public byte[] getID3v2Tag() {
+		return id3v2Tag;
+	}
+
+	/**
+	 * @param id3v2Tag complete ID3v2 tag (header, frames, padding) written in front of clips, or <code>null</code>
+	 */
+	public void setID3v2Tag(byte[] id3v2Tag) {
+		this.id3v2Tag = id3v2Tag;
+	}
+
+	/**
+	 * @return <code>true</code> if a Xing/Info header frame is written in front of the audio frames
+	 */
+	public boolean isXingHeader() {
+		return xingHeader;
+	}
+
+	/**
+	 * @param xingHeader <code>true</code> to write a Xing/Info header frame (default), holding the clip's frame and byte counts
+	 */
+	public void setXingHeader(boolean xingHeader) {
+		this.xingHeader = xingHeader;
+	}
+
+	/**
+	 * @param frame frame number
+	 * @return file offset of the given frame
+	 */
+	long getOffset(int frame) {
+		return offsets[frame];
+	}
+
+	/**
+	 * Answer the number of the frame playing at the given time.
+	 * @param millis time (milliseconds), relative to the first audio frame
+	 * @param ceil <code>true</code> to round up to the next frame boundary
+	 * @return frame number, at most {@link #getFrames()}
+	 */
+	int frameAt(long millis, boolean ceil) {
+		MP3Frame.Header header = headers[0];
+		long divisor = 1000L * header.getSampleCount();
+		millis = Math.min(millis, (frames * divisor + header.getFrequency() - 1) / header.getFrequency()); // avoid overflow
+		long frame = (millis * header.getFrequency() + (ceil ? divisor - 1 : 0)) / divisor;
+		return (int)Math.min(frame, frames);
+	}
+
+	/**
+	 * Answer the first frame to be copied for a clip starting at the given frame, i.e. the first of the
+	 * contiguous preceding frames needed for the bit reservoir (Layer III <code>main_data_begin</code>).
+	 * @param frame first frame of the clip
+	 * @return first frame to be copied
+	 * @throws IOException
+	 */
+	int reservoirStart(int frame) throws IOException {
+		MP3Frame.Header header = headers[frame];
+		if (header.getLayer() != MP3Frame.Header.MPEG_LAYER_3) {
+			return frame;
+		}
+		int crcSize = header.getProtection() == MP3Frame.Header.MPEG_PROTECTION_CRC ? 2 : 0;
+		ByteBuffer buffer = ByteBuffer.allocate(2);
+		if (channel.read(buffer, offsets[frame] + 4 + crcSize) < 2) {
+			return frame;
+		}
+		int mainDataBegin = header.getVersion() == MP3Frame.Header.MPEG_VERSION_1
+				? ((buffer.get(0) & 0xFF) << 1) | ((buffer.get(1) & 0xFF) >> 7)
+				: buffer.get(0) & 0xFF;
+		while (mainDataBegin > 0 && frame > 0 && offsets[frame - 1] + headers[frame - 1].getFrameSize() == offsets[frame]) {
+			frame--;
+			header = headers[frame];
+			crcSize = header.getProtection() == MP3Frame.Header.MPEG_PROTECTION_CRC ? 2 : 0;
+			mainDataBegin -= header.getFrameSize() - 4 - crcSize - header.getSideInfoSize();
+		}
+		return frame;
+	}
+
+	/**
+	 * Write a clip made of the frames overlapping the given time range. The clip starts at the last frame boundary
+	 * at or before <code>fromMillis</code>, preceded by the frames needed for the bit reservoir (see
+	 * {@link #reservoirStart(int)}), so it may start a few frames early. It ends at the first frame boundary at or
+	 * after <code>toMillis</code>.
+	 * @param fromMillis start time (milliseconds), relative to the first audio frame
+	 * @param toMillis end time (milliseconds)
+	 * @param output output channel
+	 * @return number of bytes written
+	 * @throws IOException
+	 */
+	public long cut(long fromMillis, long toMillis, WritableByteChannel output) throws IOException {
+		if (fromMillis < 0 || toMillis <= fromMillis) {
+			throw new IllegalArgumentException("Invalid time range: " + fromMillis + ".." + toMillis);
+		}
+		int last = frameAt(toMillis, true);
+		int first = frameAt(fromMillis, false);
+		if (first >= last) {
+			throw new IllegalArgumentException("Time range " + fromMillis + ".." + toMillis + " is beyond the end of the audio");
+		}
+		first = reservoirStart(first);
+
+		long audioBytes = 0;
+		for (int i = first; i < last; i++) {
+			audioBytes += headers[i].getFrameSize();
+		}
+		long total = 0;
+		if (id3v2Tag != null) {
+			total += write(ByteBuffer.wrap(id3v2Tag), output);
+		}
+		if (xingHeader) {
+			ByteBuffer xing = xingFrame(first, last, audioBytes);
+			if (xing != null) {
+				total += write(xing, output);
+			}
+		}
+		int start = first;
+		for (int i = first + 1; i <= last; i++) { // copy runs of contiguous frames
+			if (i == last || offsets[i - 1] + headers[i - 1].getFrameSize() != offsets[i]) {
+				total += transfer(offsets[start], offsets[i - 1] + headers[i - 1].getFrameSize() - offsets[start], output);
+				start = i;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Create a Xing/Info header frame using the first frame's header (without CRC protection).
+	 * @return frame or <code>null</code> if the first frame is too small to hold a Xing header
+	 */
+	private ByteBuffer xingFrame(int first, int last, long audioBytes) throws IOException {
+		MP3Frame.Header header = headers[first];
+		int size = header.getFrameSize();
+		int xingOffset = header.getXingOffset();
+		if (header.getLayer() != MP3Frame.Header.MPEG_LAYER_3 || xingOffset + XING_SIZE > size) {
+			return null;
+		}
+		byte[] bytes = new byte[size];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, 4);
+		if (channel.read(buffer, offsets[first]) < 4) {
+			throw new EOFException();
+		}
+		bytes[1] |= 0x01; // no CRC
+		boolean vbr = false;
+		for (int i = first + 1; i < last && !vbr; i++) {
+			vbr = headers[i].getBitrate() != header.getBitrate();
+		}
+		buffer = ByteBuffer.wrap(bytes);
+		buffer.position(xingOffset);
+		buffer.put(vbr ? (byte)'X' : (byte)'I').put(vbr ? (byte)'i' : (byte)'n').put(vbr ? (byte)'n' : (byte)'f').put(vbr ? (byte)'g' : (byte)'o');
+		buffer.putInt(XING_FLAGS);
+		buffer.putInt(last - first);
+		buffer.putInt((int)(size + audioBytes));
+		buffer.clear();
+		return buffer;
+	}
+
+	private static long write(ByteBuffer buffer, WritableByteChannel output) throws IOException {
+		long total = buffer.remaining();
+		while (buffer.hasRemaining()) {
+			output.write(buffer);
+		}
+		return total;
+	}
+
+	private long transfer(long position, long count, WritableByteChannel output) throws IOException {
+		long total = count;
+		while (count > 0) {
+			long transferred = channel.transferTo(position, count, output);
+			if (transferred <= 0) {
+				throw new EOFException();
+			}
+			position += transferred;
+			count -= transferred;
+		}
+		return total;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Background refinement of estimated durations.
+ * Read an {@link MP3Info} with a fast duration strategy (e.g. {@link DurationStrategy#HEADER_ONLY}) and, if its
+ * duration is not exact (see {@link MP3Info#isDurationExact()}), submit the file to a refiner. Files are queued
+ * and re-read by a pool of low priority daemon threads using {@link DurationStrategy#EXACT_SCAN}. The results
+ * are published to the listener given on submission. The queue is bounded; submission never blocks.
+ */
+public class MP3DurationRefiner {
+	/**
+	 * Receives refined results. Methods are called by the worker threads.
+	 */
+	public interface Listener {
+		/**
+		 * Called when a file has been re-read.
+		 * @param path file
+		 * @param info info with exact duration
+		 */
+		public void durationRefined(Path path, MP3Info info);
+
+		/**
+		 * Called when a file could not be re-read.
+		 * @param path file
+		 * @param e exception
+		 */
+		public void refinementFailed(Path path, Exception e);
+	}
+
+	private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+	private final MP3Options options;
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Create a refiner using default options with {@link DurationStrategy#EXACT_SCAN}.
+	 * @param threads number of worker threads
+	 * @param capacity maximum number of queued files
+	 */
+	public MP3DurationRefiner(int threads, int capacity) {
+		this(threads, capacity, exactScanOptions());
+	}
+
+	/**
+	 * Create a refiner. The options are shared by all workers and must not be modified afterwards.
+	 * @param threads number of worker threads
+	 * @param capacity maximum number of queued files
+	 * @param options options with duration strategy {@link DurationStrategy#EXACT_SCAN}
+	 */
+	public MP3DurationRefiner(int threads, int capacity, MP3Options options) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Invalid number of threads: " + threads);
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Invalid queue capacity: " + capacity);
+		}
+		if (options.getDurationStrategy() != DurationStrategy.EXACT_SCAN) {
+			throw new IllegalArgumentException("Duration strategy must be " + DurationStrategy.EXACT_SCAN);
+		}
+		this.options = options;
+		final String prefix = "mp3-refiner-" + POOL_NUMBER.incrementAndGet() + "-";
+		ThreadFactory threadFactory = new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		};
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(capacity), threadFactory);
+	}
+
+	private static MP3Options exactScanOptions() {
+		MP3Options options = new MP3Options();
+		options.setDurationStrategy(DurationStrategy.EXACT_SCAN);
+		return options;
+	}
+
+	/**
+	 * Queue a file for refinement. The worker opens its own channel for the file and closes it
+	 * before the listener is called, so no resources of the caller are used.
+	 * @param path file
+	 * @param listener listener receiving the result
+	 * @return <code>false</code> if the queue is full or the refiner has been shut down
+	 */
+	public boolean submit(final Path path, final Listener listener) {
+		if (path == null || listener == null) {
+			throw new IllegalArgumentException("Path and listener must not be null");
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					MP3Info info;
+					try {
+						info = new MP3Info(path, Level.FINEST, options);
+					} catch (Exception e) {
+						listener.refinementFailed(path, e);
+						return;
+					}
+					listener.durationRefined(path, info);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Answer the number of queued files (not including the files currently being read).
+	 * @return queue size
+	 */
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Stop accepting files. Queued files are still refined.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Wait for queued files to be refined after {@link #shutdown()}.
+	 * @param timeout maximum time to wait
+	 * @param unit time unit
+	 * @return <code>true</code> if all files have been refined, <code>false</code> if the timeout elapsed
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+}
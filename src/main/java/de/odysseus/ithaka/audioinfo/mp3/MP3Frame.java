@@ -17,7 +17,22 @@ package de.odysseus.ithaka.audioinfo.mp3;
 
 
 public class MP3Frame {
+	/**
+	 * CRC-16 (polynomial <code>0x8005</code>, initial value <code>0xFFFF</code>) as used to protect MPEG audio frames.
+	 * Bytes are processed using a lookup table; {@link #update(int, int)} processes single bits.
+	 */
 	static final class CRC16 {
+		private static final short[] TABLE = new short[256];
+		static {
+			for (int i = 0; i < 256; i++) {
+				int crc = i << 8;
+				for (int bit = 0; bit < 8; bit++) {
+					crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x8005 : crc << 1;
+				}
+				TABLE[i] = (short)crc;
+			}
+		}
+
 		private short crc = (short) 0xFFFF;
 
 		public void update(int value, int length) {
@@ -33,7 +48,15 @@ public class MP3Frame {
 		}
 
 		public void update(byte value) {
-			update(value, 8);
+			crc = (short)((crc << 8) ^ TABLE[((crc >>> 8) ^ value) & 0xFF]);
+		}
+
+		public void update(byte[] bytes, int offset, int length) {
+			int value = crc;
+			for (int i = offset, end = offset + length; i < end; i++) {
+				value = (value << 8) ^ TABLE[((value >>> 8) ^ bytes[i]) & 0xFF];
+			}
+			crc = (short)value;
 		}
 		
 		public short getValue() {
@@ -125,48 +148,144 @@ public class MP3Frame {
 		public static final int MPEG_CHANNEL_MODE_MONO = 3;
 		public static final int MPEG_PROTECTION_CRC = 0;
 
-		private final int version;
-		private final int layer;
-		private final int frequency;
-		private final int bitrate;
-		private final int channelMode;
-		private final int padding;
-		private final int protection;
+		/**
+		 * Lazily built table of all valid headers, indexed by {@link Header#index(int, int, int)}.
+		 * Invalid header bits map to <code>null</code>.
+		 */
+		private static final class Table {
+			static final Header[] HEADERS = new Header[1 << 14];
+			static {
+				for (int index = 0; index < HEADERS.length; index++) {
+					int b1 = 0xE0 | index >> 9;
+					int b2 = (index >> 2 & 0x7F) << 1;
+					int b3 = (index & 0x3) << 6;
+					if (check(b1, b2, b3) == null) {
+						try {
+							HEADERS[index] = new Header(b1, b2, b3);
+						} catch (MP3Exception e) {
+							throw new AssertionError(e); // already checked
+						}
+					}
+				}
+			}
+		}
 
-		public Header(int b1, int b2, int b3) throws MP3Exception {
-			version = b1 >> 3 & 0x3;
+		/**
+		 * Pack the meaningful header bits (version, layer, protection, bitrate, frequency,
+		 * padding and channel mode) into a 14 bit table index.
+		 */
+		private static int index(int b1, int b2, int b3) {
+			return (b1 & 0x1F) << 9 | (b2 >> 1 & 0x7F) << 2 | (b3 >> 6 & 0x3);
+		}
+
+		private static int frameSize(int version, int layer, int bitrateIndex, int frequencyIndex, int padding) {
+			int bitrate = BITRATES[bitrateIndex][BITRATES_COLUMN[version][layer]];
+			int frequency = FREQUENCIES[frequencyIndex][version];
+			return ((SIZE_COEFFICIENTS[version][layer] * bitrate / frequency) + padding) * SLOT_SIZES[layer];
+		}
+
+		/**
+		 * Validate header bytes.
+		 * @return error message or <code>null</code> if the header bytes are valid
+		 */
+		private static String check(int b1, int b2, int b3) {
+			int version = b1 >> 3 & 0x3;
 			if (version == MPEG_VERSION_RESERVED) {
-				throw new MP3Exception("Reserved version");
+				return "Reserved version";
 			}
-			layer = b1 >> 1 & 0x3;
+			int layer = b1 >> 1 & 0x3;
 			if (layer == MPEG_LAYER_RESERVED) {
-				throw new MP3Exception("Reserved layer");
+				return "Reserved layer";
 			}
-			bitrate = b2 >> 4 & 0xF;
-			if (bitrate == MPEG_BITRATE_RESERVED) {
-				throw new MP3Exception("Reserved bitrate");
+			int bitrateIndex = b2 >> 4 & 0xF;
+			if (bitrateIndex == MPEG_BITRATE_RESERVED) {
+				return "Reserved bitrate";
 			}
-			if (bitrate == MPEG_BITRATE_FREE) {
-				throw new MP3Exception("Free bitrate");
+			if (bitrateIndex == MPEG_BITRATE_FREE) {
+				return "Free bitrate";
 			}
-			frequency = b2 >> 2 & 0x3;
-			if (frequency == MPEG_FRQUENCY_RESERVED) {
-				throw new MP3Exception("Reserved frequency");
+			int frequencyIndex = b2 >> 2 & 0x3;
+			if (frequencyIndex == MPEG_FRQUENCY_RESERVED) {
+				return "Reserved frequency";
 			}
-			channelMode = b3 >> 6 & 0x3;
-			padding = b2 >> 1 & 0x1;
-			protection = b1 & 0x1;
-
 			int minFrameSize = 4;
-			if (protection == MPEG_PROTECTION_CRC) {
+			if ((b1 & 0x1) == MPEG_PROTECTION_CRC) {
 				minFrameSize += 2;
 			}
 			if (layer == MPEG_LAYER_3) {
-				minFrameSize += getSideInfoSize();
+				minFrameSize += SIDE_INFO_SIZES[b3 >> 6 & 0x3][version];
+			}
+			if (frameSize(version, layer, bitrateIndex, frequencyIndex, b2 >> 1 & 0x1) < minFrameSize) {
+				return "Frame size must be at least " + minFrameSize;
+			}
+			return null;
+		}
+
+		/**
+		 * Answer the shared (immutable) header instance for the given header bytes.
+		 * This method neither allocates nor throws, which makes it suitable for sync search.
+		 * @param b1 second header byte
+		 * @param b2 third header byte
+		 * @param b3 fourth header byte
+		 * @return header or <code>null</code> if the header bytes do not describe a valid frame header
+		 */
+		public static Header tryDecode(int b1, int b2, int b3) {
+			return Table.HEADERS[index(b1, b2, b3)];
+		}
+
+		/**
+		 * Answer the shared (immutable) header instance for the given header bytes.
+		 * In contrast to the constructor, this method does not allocate a new header for
+		 * valid header bytes.
+		 * @param b1 second header byte
+		 * @param b2 third header byte
+		 * @param b3 fourth header byte
+		 * @return header
+		 * @throws MP3Exception if the header bytes do not describe a valid frame header
+		 */
+		public static Header valueOf(int b1, int b2, int b3) throws MP3Exception {
+			Header header = tryDecode(b1, b2, b3);
+			if (header == null) {
+				throw new MP3Exception(check(b1, b2, b3));
 			}
-			if (getFrameSize() < minFrameSize) {
-				throw new MP3Exception("Frame size must be at least " + minFrameSize);
+			return header;
+		}
+
+		private final int version;
+		private final int layer;
+		private final int frequencyIndex;
+		private final int bitrateIndex;
+		private final int channelMode;
+		private final int padding;
+		private final int protection;
+
+		/*
+		 * derived values
+		 */
+		private final int frequency;
+		private final int bitrate;
+		private final int frameSize;
+		private final int sideInfoSize;
+		private final int duration;
+
+		public Header(int b1, int b2, int b3) throws MP3Exception {
+			String error = check(b1, b2, b3);
+			if (error != null) {
+				throw new MP3Exception(error);
 			}
+			version = b1 >> 3 & 0x3;
+			layer = b1 >> 1 & 0x3;
+			bitrateIndex = b2 >> 4 & 0xF;
+			frequencyIndex = b2 >> 2 & 0x3;
+			channelMode = b3 >> 6 & 0x3;
+			padding = b2 >> 1 & 0x1;
+			protection = b1 & 0x1;
+
+			frequency = FREQUENCIES[frequencyIndex][version];
+			bitrate = BITRATES[bitrateIndex][BITRATES_COLUMN[version][layer]];
+			frameSize = frameSize(version, layer, bitrateIndex, frequencyIndex, padding);
+			sideInfoSize = SIDE_INFO_SIZES[channelMode][version];
+			duration = (int)getTotalDuration(frameSize);
 		}
 
 		public int getVersion() {
@@ -178,7 +297,7 @@ public class MP3Frame {
 		}
 		
 		public int getFrequency() {
-			return FREQUENCIES[frequency][version];
+			return frequency;
 		}
 
 		public int getChannelMode() {
@@ -189,42 +308,54 @@ public class MP3Frame {
 			return protection;
 		}
 
+		/**
+		 * Answer the number of samples per channel in a frame (ISO/IEC 11172-3 and 13818-3):
+		 * 384 for Layer I, 1152 for Layer II and MPEG-1 Layer III. MPEG-2/2.5 Layer III frames
+		 * hold a single granule, i.e. 576 samples, regardless of the channel mode.
+		 * @return number of samples per frame
+		 */
 		public int getSampleCount() {
 			if (layer == MPEG_LAYER_1) {
 				return 384;
-			} else { // TODO correct?
+			} else if (layer == MPEG_LAYER_3 && version != MPEG_VERSION_1) {
+				return 576;
+			} else {
 				return 1152;
 			}
 		}
 
 		public int getFrameSize() {
-			return ((SIZE_COEFFICIENTS[version][layer] * getBitrate() / getFrequency()) + padding) * SLOT_SIZES[layer];
+			return frameSize;
 		}
 		
 		public int getBitrate() {
-			return BITRATES[bitrate][BITRATES_COLUMN[version][layer]];
+			return bitrate;
 		}
 		
 		public int getDuration() {
-			return (int)getTotalDuration(getFrameSize());
+			return duration;
 		}
 
 		public long getTotalDuration(long totalSize) {
-			long duration = 1000L * (getSampleCount() * totalSize) / (getFrameSize() * getFrequency());
-			if (getVersion() != MPEG_VERSION_1 && getChannelMode() == MPEG_CHANNEL_MODE_MONO) {
-				duration /= 2;
-			}
-			return duration;
+			return 1000L * (getSampleCount() * totalSize) / (frameSize * frequency);
 		}
 
 		public boolean isCompatible(Header header) {
-			return layer == header.layer && version == header.version && frequency == header.frequency && channelMode == header.channelMode;
+			return layer == header.layer && version == header.version && frequencyIndex == header.frequencyIndex && channelMode == header.channelMode;
 		}
 		
 		public int getSideInfoSize() {
-			return SIDE_INFO_SIZES[channelMode][version];
+			return sideInfoSize;
 		}
 		
+		/**
+		 * @return number of leading frame bytes covered by a CRC check (header, CRC and side info),
+		 * or <code>0</code> if this is not a CRC protected Layer III frame
+		 */
+		public int getChecksumSize() {
+			return protection == MPEG_PROTECTION_CRC && layer == MPEG_LAYER_3 ? 6 + sideInfoSize : 0;
+		}
+
 		public int getXingOffset() {
 			return 4 + getSideInfoSize();
 		}
@@ -234,41 +365,59 @@ public class MP3Frame {
 		}
 	}
 
-	private final byte[] bytes;
+	private final byte[] bytes; // may be null (header-only frame) or hold the checksum bytes only
 	private final Header header;
 
 	MP3Frame(Header header, byte[] bytes) {
 		this.header = header;
 		this.bytes = bytes;
 	}
-	
+
+	/**
+	 * Create header-only frame (payload has been skipped).
+	 * @param header frame header
+	 */
+	MP3Frame(Header header) {
+		this(header, null);
+	}
+
+	/**
+	 * Verify the CRC of a CRC protected Layer III frame.
+	 * The frame bytes may be limited to the checksum bytes (see {@link Header#getChecksumSize()}).
+	 * @return <code>true</code> if the frame's CRC doesn't match
+	 */
 	boolean isChecksumError() {
-		if (header.getProtection() == Header.MPEG_PROTECTION_CRC) {
-			if (header.getLayer() == Header.MPEG_LAYER_3) {
-				CRC16 crc16 = new CRC16();
-				crc16.update(bytes[2]);
-				crc16.update(bytes[3]);
-				// skip crc bytes 4+5
-				int sideInfoSize = header.getSideInfoSize();
-				for (int i = 0; i < sideInfoSize; i++) {
-					crc16.update(bytes[6 + i]);
-				}
-				int crc = ((bytes[4] & 0xFF) << 8) | (bytes[5] & 0xFF);
-				return crc != crc16.getValue();
-			}
+		int checksumSize = header.getChecksumSize();
+		if (bytes != null && checksumSize > 0 && bytes.length >= checksumSize) {
+			CRC16 crc16 = new CRC16();
+			crc16.update(bytes, 2, 2);
+			// skip crc bytes 4+5
+			crc16.update(bytes, 6, checksumSize - 6);
+			int crc = ((bytes[4] & 0xFF) << 8) | (bytes[5] & 0xFF);
+			return crc != (crc16.getValue() & 0xFFFF);
 		}
 		return false;
 	}
 	
 	public int getSize() {
-		return bytes.length;
+		return header.getFrameSize();
 	}
 	
 	public Header getHeader() {
 		return header;
 	}
 
+	/**
+	 * @return frame bytes or <code>null</code> (header-only frame)
+	 */
+	byte[] getBytes() {
+		return bytes;
+	}
+
 	boolean isXingFrame() {
+		if (bytes == null) {
+			return false;
+		}
 		int xingOffset = header.getXingOffset();
 		if (bytes.length < xingOffset + 12) { // minimum Xing header size == 12
 			return false;
@@ -286,6 +435,9 @@ public class MP3Frame {
 	}
 
 	boolean isVBRIFrame() {
+		if (bytes == null) {
+			return false;
+		}
 		int vbriOffset = header.getVBRIOffset();
 		if (bytes.length < vbriOffset + 26) { // minimum VBRI header size == 26
 			return false;
@@ -293,23 +445,12 @@ public class MP3Frame {
 		return bytes[vbriOffset] == 'V' && bytes[vbriOffset + 1] == 'B' && bytes[vbriOffset + 2] == 'R' && bytes[vbriOffset + 3] == 'I';
 	}
 
+	/**
+	 * @return number of frames from Xing/VBRI header or <code>-1</code>
+	 * @see MP3VBRHeader#getFrames()
+	 */
 	public int getNumberOfFrames() {
-		if (isXingFrame()) {
-			int xingOffset = header.getXingOffset();
-			byte flags = bytes[xingOffset + 7];
-			if ((flags & 0x01) != 0) {
-				return  ((bytes[xingOffset +  8] & 0xFF) << 24) |
-						((bytes[xingOffset +  9] & 0xFF) << 16) |
-						((bytes[xingOffset + 10] & 0xFF) << 8)  |
-						( bytes[xingOffset + 11] & 0xFF);
-			}
-		} else if (isVBRIFrame()) {
-			int vbriOffset = header.getVBRIOffset();
-			return  ((bytes[vbriOffset + 14] & 0xFF) << 24) |
-					((bytes[vbriOffset + 15] & 0xFF) << 16) |
-					((bytes[vbriOffset + 16] & 0xFF) << 8)  |
-					( bytes[vbriOffset + 17] & 0xFF);
-		}
-		return -1;
+		MP3VBRHeader vbrHeader = MP3VBRHeader.read(this);
+		return vbrHeader != null ? vbrHeader.getFrames() : -1;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Frame index, mapping times to file offsets and vice versa.
+ * The index holds the offset of every <em>n</em>th audio frame. Time <code>0</code> refers to the first
+ * frame following a Xing/Info/VBRI header frame, if present.
+ * Offsets are stored as <code>long</code> block offsets (every 64th entry) plus <code>int</code> offsets
+ * relative to their block. The binary form (see {@link #write(OutputStream)}) stores variable length deltas.
+ */
+public class MP3FrameIndex {
+	public static final int MAX_INTERVAL = 4096;
+
+	private static final int MAGIC = 0x4D503349; // "MP3I"
+	private static final int VERSION = 1;
+
+	private static final int BLOCK_SHIFT = 6;
+	private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+
+	/**
+	 * Read index from its binary form.
+	 * @param input input stream
+	 * @return frame index
+	 * @throws IOException if the data is not a valid frame index
+	 */
+	public static MP3FrameIndex read(InputStream input) throws IOException {
+		DataInputStream data = new DataInputStream(input);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not a frame index");
+		}
+		if (data.readUnsignedByte() != VERSION) {
+			throw new IOException("Unsupported frame index version");
+		}
+		int interval = data.readUnsignedShort();
+		int sampleCount = data.readUnsignedShort();
+		int frequency = data.readInt();
+		long frames = data.readLong();
+		int size = data.readInt();
+		if (interval < 1 || interval > MAX_INTERVAL || sampleCount == 0 || frequency <= 0 || frames < 0 || size != (frames + interval - 1) / interval) {
+			throw new IOException("Invalid frame index");
+		}
+		MP3FrameIndex index = new MP3FrameIndex(interval, sampleCount, frequency, Math.min(size, 1 << 16)); // size is not trusted
+		long offset = 0;
+		long block = 0;
+		for (int i = 0; i < size; i++) {
+			long delta = readVarLong(data);
+			if ((i & BLOCK_MASK) == 0) {
+				block = offset + delta;
+			}
+			if (delta < 0 || offset + delta < offset || offset + delta - block > Integer.MAX_VALUE) {
+				throw new IOException("Invalid frame index");
+			}
+			offset += delta;
+			index.put(offset);
+		}
+		index.frames = frames;
+		return index;
+	}
+
+	private static long readVarLong(DataInputStream data) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = data.readUnsignedByte();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid frame index");
+	}
+
+	private static void writeVarLong(DataOutputStream data, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			data.writeByte((int)(value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data.writeByte((int)value);
+	}
+
+	private final int interval;
+	private final int sampleCount;
+	private final int frequency;
+
+	private long frames;
+	private int size;
+	private long[] blocks;
+	private int[] offsets;
+
+	private MP3FrameIndex(int interval, int sampleCount, int frequency, int capacity) {
+		this.interval = interval;
+		this.sampleCount = sampleCount;
+		this.frequency = frequency;
+		this.offsets = new int[Math.max(capacity, 16)];
+		this.blocks = new long[(offsets.length >> BLOCK_SHIFT) + 1];
+	}
+
+	/**
+	 * Create empty index.
+	 * @param interval number of frames per index entry
+	 * @param header frame header (determines samples per frame and sample rate)
+	 */
+	MP3FrameIndex(int interval, MP3Frame.Header header) {
+		this(interval, header.getSampleCount(), header.getFrequency(), 0);
+	}
+
+	private void put(long offset) {
+		if (size == offsets.length) {
+			offsets = Arrays.copyOf(offsets, size * 2);
+			blocks = Arrays.copyOf(blocks, (offsets.length >> BLOCK_SHIFT) + 1);
+		}
+		if ((size & BLOCK_MASK) == 0) {
+			blocks[size >> BLOCK_SHIFT] = offset;
+		}
+		offsets[size] = (int)(offset - blocks[size >> BLOCK_SHIFT]);
+		size++;
+	}
+
+	/**
+	 * Add the next audio frame.
+	 * @param offset frame offset
+	 */
+	void add(long offset) {
+		if (frames++ % interval == 0) {
+			put(offset);
+		}
+	}
+
+	/**
+	 * @return number of frames per index entry
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return number of audio frames
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return number of index entries
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return duration (milliseconds)
+	 */
+	public long getDuration() {
+		return 1000L * frames * sampleCount / frequency;
+	}
+
+	/**
+	 * @param entry entry number
+	 * @return file offset of the given entry's frame
+	 */
+	public long getOffset(int entry) {
+		if (entry < 0 || entry >= size) {
+			throw new IndexOutOfBoundsException("Invalid entry: " + entry);
+		}
+		return blocks[entry >> BLOCK_SHIFT] + offsets[entry];
+	}
+
+	/**
+	 * The answered time is rounded up to full milliseconds, so {@link #timeToOffset(long)} maps it back
+	 * to the entry's offset.
+	 * @param entry entry number
+	 * @return time (milliseconds) of the given entry's frame
+	 */
+	public long getTime(int entry) {
+		if (entry < 0 || entry >= size) {
+			throw new IndexOutOfBoundsException("Invalid entry: " + entry);
+		}
+		return (1000L * entry * interval * sampleCount + frequency - 1) / frequency;
+	}
+
+	/**
+	 * Answer the file offset of the indexed frame at or before the given time.
+	 * @param millis time (milliseconds)
+	 * @return offset or <code>-1</code> if the index is empty
+	 */
+	public long timeToOffset(long millis) {
+		if (size == 0) {
+			return -1;
+		}
+		long frame = Math.max(0, millis) * frequency / (1000L * sampleCount);
+		return getOffset((int)Math.min(size - 1, frame / interval));
+	}
+
+	/**
+	 * Answer the time of the indexed frame at or before the given file offset.
+	 * @param offset file offset
+	 * @return time (milliseconds) or <code>-1</code> if the offset is before the first indexed frame
+	 */
+	public long offsetToTime(long offset) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (getOffset(middle) <= offset) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return high < 0 ? -1 : getTime(high);
+	}
+
+	/**
+	 * Write index in binary form.
+	 * @param output output stream
+	 * @throws IOException
+	 */
+	public void write(OutputStream output) throws IOException {
+		DataOutputStream data = new DataOutputStream(output);
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.writeShort(interval);
+		data.writeShort(sampleCount);
+		data.writeInt(frequency);
+		data.writeLong(frames);
+		data.writeInt(size);
+		long previous = 0;
+		for (int i = 0; i < size; i++) {
+			long offset = getOffset(i);
+			writeVarLong(data, offset - previous);
+			previous = offset;
+		}
+		data.flush();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[frames=%d, interval=%d, size=%d]", getClass().getSimpleName(), frames, interval, size);
+	}
+}
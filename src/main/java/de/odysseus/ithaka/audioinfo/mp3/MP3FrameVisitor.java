@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Visitor receiving the audio frames found by a frame scan (see {@link MP3Options#addFrameVisitor(MP3FrameVisitor)}).
+ * All registered visitors are served by a single pass over the audio. A Xing/Info/VBRI header frame is not visited.
+ */
+public interface MP3FrameVisitor {
+	/**
+	 * Answer <code>true</code> if this visitor wants to see the frame data. Frame data is only read
+	 * if at least one visitor requires it.
+	 * @return <code>true</code> to receive frame data
+	 */
+	public boolean isDataRequired();
+
+	/**
+	 * Visit an audio frame.
+	 * @param header frame header
+	 * @param offset file offset of the frame
+	 * @param size frame size
+	 * @param data read-only view of the frame bytes (including the header), positioned at the frame start,
+	 * or <code>null</code> if not required. The view is only valid during this call.
+	 */
+	public void visitFrame(MP3Frame.Header header, long offset, int size, ByteBuffer data);
+}
@@ -18,10 +18,20 @@ package de.odysseus.ithaka.audioinfo.mp3;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import de.odysseus.ithaka.audioinfo.AudioInfo;
+import de.odysseus.ithaka.audioinfo.util.ByteBufferInputStream;
+import de.odysseus.ithaka.audioinfo.util.FileChannelSource;
+import de.odysseus.ithaka.audioinfo.util.PositionInputStream;
+import de.odysseus.ithaka.audioinfo.util.RandomAccessSource;
 
 /**
  * MP3 audio info.
@@ -30,116 +40,467 @@ import de.odysseus.ithaka.audioinfo.AudioInfo;
 public class MP3Info extends AudioInfo {
 	static final Logger LOGGER = Logger.getLogger(MP3Info.class.getName());
 
-	interface StopReadCondition {
-		public boolean stopRead(MP3Input data) throws IOException;
+	/**
+	 * Bogus TLEN value written by old LAME versions.
+	 */
+	private static final long LAME_TLEN = 97391548L;
+
+	/**
+	 * Tag durations from one hour up are cross-validated against the audio frames.
+	 */
+	private static final long TAG_DURATION_CHECK = 3600000L;
+
+	/**
+	 * Frame source used by {@link MP3Info#calculateDuration(FrameReader, long)}.
+	 */
+	interface FrameReader {
+		public MP3Frame readFirstFrame() throws IOException;
+		public MP3Frame readNextFrame(MP3Frame previousFrame) throws IOException;
+		/**
+		 * Read the next frame. If requested, a CRC protected frame keeps its checksum bytes
+		 * (see {@link MP3Frame#isChecksumError()}) and the frame data is provided by {@link #getFrameData()}.
+		 * If the next frame is compatible, but truncated by the end of input, <code>null</code> is answered
+		 * and the reader is positioned after the frame start.
+		 */
+		public MP3Frame readNextFrame(MP3Frame previousFrame, boolean checksum, boolean data) throws IOException;
+		/**
+		 * Answer a read-only view of the bytes of the frame read by the last call to
+		 * {@link #readNextFrame(MP3Frame, boolean, boolean)} which requested the frame data.
+		 * The view is valid until the next read.
+		 */
+		public ByteBuffer getFrameData();
+		public long getPosition();
+		/**
+		 * Move forward to the given position, which must not be before the current position.
+		 */
+		public void seek(long position) throws IOException;
 	}
-	
+
+	private final MP3Options options;
+	private final byte[] headerBuffer = new byte[4];
+
+	private byte[] frameBuffer; // frame data buffer, reused by readNextFrame()
+	private ByteBuffer frameData;
+
+	private MP3VBRHeader vbrHeader;
+	private long durationError;
+	private DurationMethod durationMethod;
+	private MP3FrameIndex frameIndex;
+	private MP3Audit audit;
+	private MP3AudioDigest digest;
+	private byte[] audioDigest;
+
+	private int sampleRate;
+	private int channels;
+	private int bitrate;
+	private int minBitrate;
+	private int maxBitrate;
+	private boolean vbr;
+	private String encoder;
+
 	public MP3Info(InputStream input, long fileLength) throws IOException, ID3v2Exception, MP3Exception {
 		this(input, fileLength, Level.FINEST);
 	}
 
-	public MP3Info(InputStream input, final long fileLength, Level debugLevel) throws IOException, ID3v2Exception, MP3Exception {
+	public MP3Info(InputStream input, long fileLength, Level debugLevel) throws IOException, ID3v2Exception, MP3Exception {
+		this(input, fileLength, debugLevel, new MP3Options());
+	}
+
+	public MP3Info(InputStream input, final long fileLength, Level debugLevel, MP3Options options) throws IOException, ID3v2Exception, MP3Exception {
+		this.options = options;
 		brand = "MP3";
 		version = "0";
-		MP3Input data = new MP3Input(input);
+		final MP3Input data = new MP3Input(input);
 		if (ID3v2Info.isID3v2StartPosition(data)) {
-			ID3v2Info info = new ID3v2Info(data, debugLevel);
-			album = info.getAlbum();
-			albumArtist = info.getAlbumArtist();
-			artist = info.getArtist();
-			comment = info.getComment();
-			cover = info.getCover();
-			compilation = info.isCompilation();
-			composer = info.getComposer();
-			copyright = info.getCopyright();
-			disc = info.getDisc();
-			discs = info.getDiscs();
-			duration = info.getDuration();
-			genre = info.getGenre();
-			grouping = info.getGrouping();
-			lyrics = info.getLyrics();
-			title = info.getTitle();
-			track = info.getTrack();
-			tracks = info.getTracks();
-			year = info.getYear();
+			setID3v2Info(new ID3v2Info(data, debugLevel, options.getTagBufferSize()));
 		}
-		if (duration <= 0 || duration >= 3600000L) { // don't trust strange durations (e.g. old lame versions always write TLEN 97391548)
-			try {					
-				duration = calculateDuration(data, fileLength, new StopReadCondition() {
-					final long stopPosition = fileLength - 128;
-					@Override
-					public boolean stopRead(MP3Input data) throws IOException {
-						return (data.getPosition() == stopPosition) && ID3v1Info.isID3v1StartPosition(data);
+		if (fileLength > 0) { // audio ends at file length or at ID3v1 tag
+			data.setAudioEnd(fileLength, fileLength - 128);
+		}
+		try {
+			duration = calculateDuration(new FrameReader() {
+				@Override
+				public MP3Frame readFirstFrame() throws IOException {
+					return MP3Info.this.readFirstFrame(data);
+				}
+				@Override
+				public MP3Frame readNextFrame(MP3Frame previousFrame) throws IOException {
+					return MP3Info.this.readNextFrame(data, previousFrame, false, false);
+				}
+				@Override
+				public MP3Frame readNextFrame(MP3Frame previousFrame, boolean checksum, boolean frameData) throws IOException {
+					return MP3Info.this.readNextFrame(data, previousFrame, checksum, frameData);
+				}
+				@Override
+				public ByteBuffer getFrameData() {
+					return frameData;
+				}
+				@Override
+				public long getPosition() {
+					return data.getPosition();
+				}
+				@Override
+				public void seek(long position) throws IOException {
+					if (position > data.getPosition()) {
+						try {
+							data.skipFully(position - data.getPosition());
+						} catch (EOFException e) {
+							// next read will fail
+						}
 					}
-				});
-			} catch (MP3Exception e) {
-				if (LOGGER.isLoggable(debugLevel)) {
-					LOGGER.log(debugLevel, "Could not determine MP3 duration", e);
 				}
+			}, fileLength);
+		} catch (MP3Exception e) {
+			if (LOGGER.isLoggable(debugLevel)) {
+				LOGGER.log(debugLevel, "Could not determine MP3 duration", e);
 			}
 		}
 		if (title == null || album == null || artist == null) {
 			if (data.getPosition() <= fileLength - 128) { // position to last 128 bytes
 				data.skipFully(fileLength - 128 - data.getPosition());
 				if (ID3v1Info.isID3v1StartPosition(input)) {
-					ID3v1Info info = new ID3v1Info(input);
-					if (album == null) {
-						album = info.getAlbum();
-					}
-					if (artist == null) {
-						artist = info.getArtist();
-					}
-					if (comment == null) {
-						comment = info.getComment();
-					}
-					if (genre == null) {
-						genre = info.getGenre();
-					}
-					if (title == null) {
-						title = info.getTitle();
-					}
-					if (track == 0) {
-						track = info.getTrack();
-					}
-					if (year == 0) {
-						year = info.getYear();
-					}
+					setID3v1Info(new ID3v1Info(input));
 				}
 			}
 		}
 	}
 
+	public MP3Info(Path path) throws IOException, ID3v2Exception, MP3Exception {
+		this(path, Level.FINEST);
+	}
+
+	public MP3Info(Path path, Level debugLevel) throws IOException, ID3v2Exception, MP3Exception {
+		this(path, debugLevel, new MP3Options());
+	}
+
+	public MP3Info(Path path, Level debugLevel, MP3Options options) throws IOException, ID3v2Exception, MP3Exception {
+		this.options = options;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			read(new FileChannelSource(channel), debugLevel);
+		}
+	}
+
+	public MP3Info(FileChannel channel) throws IOException, ID3v2Exception, MP3Exception {
+		this(channel, Level.FINEST);
+	}
+
+	/**
+	 * Read MP3 info from a file channel. The file is memory mapped and scanned by absolute indexing,
+	 * which is considerably faster than reading through an input stream if the duration has to be
+	 * calculated by scanning the audio frames. The channel's position is not used. The channel is not closed.
+	 * Frame data passed to frame visitors views the mapped file and is only valid while the channel is open.
+	 * @param channel file channel
+	 * @param debugLevel log level
+	 * @throws IOException
+	 * @throws ID3v2Exception
+	 * @throws MP3Exception
+	 */
+	public MP3Info(FileChannel channel, Level debugLevel) throws IOException, ID3v2Exception, MP3Exception {
+		this(channel, debugLevel, new MP3Options());
+	}
+
+	public MP3Info(FileChannel channel, Level debugLevel, MP3Options options) throws IOException, ID3v2Exception, MP3Exception {
+		this(new FileChannelSource(channel), debugLevel, options);
+	}
+
+	public MP3Info(RandomAccessSource source) throws IOException, ID3v2Exception, MP3Exception {
+		this(source, Level.FINEST);
+	}
+
+	public MP3Info(RandomAccessSource source, Level debugLevel) throws IOException, ID3v2Exception, MP3Exception {
+		this(source, debugLevel, new MP3Options());
+	}
+
+	/**
+	 * Read MP3 info from a random access source. The ID3v1 tag is read with a single positioned read,
+	 * independent of reading the ID3v2 tag and audio frames from the head. The audio region ends before
+	 * trailing ID3v1, APE and Lyrics3 tags. Only the ID3v2 tag and the scanned audio frames are mapped.
+	 * The source is not closed. Frame data passed to frame visitors views the source's buffers and is only
+	 * valid while the source is open.
+	 * @param source random access source
+	 * @param debugLevel log level
+	 * @param options options
+	 * @throws IOException
+	 * @throws ID3v2Exception
+	 * @throws MP3Exception
+	 */
+	public MP3Info(RandomAccessSource source, Level debugLevel, MP3Options options) throws IOException, ID3v2Exception, MP3Exception {
+		this.options = options;
+		read(source, debugLevel);
+	}
+
+	private void read(RandomAccessSource source, Level debugLevel) throws IOException, ID3v2Exception, MP3Exception {
+		brand = "MP3";
+		version = "0";
+		long length = source.length();
+		/*
+		 * tail: ID3v1 tag
+		 */
+		ByteBuffer tail = null;
+		if (length >= 128) {
+			tail = ByteBuffer.allocate(128);
+			if (source.read(length - 128, tail) < 128 || !ID3v1Info.isID3v1StartPosition(new ByteBufferInputStream((ByteBuffer)tail.flip()))) {
+				tail = null;
+			}
+		}
+		/*
+		 * head: ID3v2 tag and audio frames
+		 */
+		MP3BufferInput data = new MP3BufferInput(source, MP3TrailingTags.audioEnd(source, tail != null ? length - 128 : length));
+		data.setMaxResyncDistance(options.getMaxResyncDistance());
+		long tagLength = id3v2TagLength(data.slice(0, (int)Math.min(length, 10)));
+		if (tagLength > 0) { // map the tag only
+			PositionInputStream input = new PositionInputStream(new ByteBufferInputStream(data.slice(0, (int)Math.min(length, tagLength))));
+			setID3v2Info(new ID3v2Info(input, debugLevel, options.getTagBufferSize()));
+			data.seek(input.getPosition());
+		}
+		try {
+			duration = calculateDuration(data, length);
+		} catch (MP3Exception e) {
+			if (LOGGER.isLoggable(debugLevel)) {
+				LOGGER.log(debugLevel, "Could not determine MP3 duration", e);
+			}
+		}
+		if (title == null || album == null || artist == null) {
+			if (tail != null) {
+				setID3v1Info(new ID3v1Info(new ByteBufferInputStream(tail)));
+			}
+		}
+	}
+
+	/**
+	 * Answer the number of bytes covered by an ID3v2 tag, i.e. its header, its declared size and a possible footer.
+	 * @param header first (up to) 10 bytes
+	 * @return tag length or <code>0</code> if there's no ID3v2 tag
+	 */
+	private static long id3v2TagLength(ByteBuffer header) {
+		int p = header.position();
+		if (header.remaining() < 10 || header.get(p) != 'I' || header.get(p + 1) != 'D' || header.get(p + 2) != '3') {
+			return 0;
+		}
+		int size = 0;
+		for (int i = 6; i < 10; i++) { // sync-safe integer
+			size = size << 7 | header.get(p + i) & 0x7F;
+		}
+		return 10 + size + 10L;
+	}
+
+	private void setID3v2Info(ID3v2Info info) {
+		album = info.getAlbum();
+		albumArtist = info.getAlbumArtist();
+		artist = info.getArtist();
+		comment = info.getComment();
+		cover = info.getCover();
+		compilation = info.isCompilation();
+		composer = info.getComposer();
+		copyright = info.getCopyright();
+		disc = info.getDisc();
+		discs = info.getDiscs();
+		duration = info.getDuration() != LAME_TLEN ? info.getDuration() : 0;
+		if (duration > 0) {
+			durationMethod = DurationMethod.TAG;
+		}
+		genre = info.getGenre();
+		grouping = info.getGrouping();
+		lyrics = info.getLyrics();
+		title = info.getTitle();
+		track = info.getTrack();
+		tracks = info.getTracks();
+		year = info.getYear();
+	}
+
+	private void setID3v1Info(ID3v1Info info) {
+		if (album == null) {
+			album = info.getAlbum();
+		}
+		if (artist == null) {
+			artist = info.getArtist();
+		}
+		if (comment == null) {
+			comment = info.getComment();
+		}
+		if (genre == null) {
+			genre = info.getGenre();
+		}
+		if (title == null) {
+			title = info.getTitle();
+		}
+		if (track == 0) {
+			track = info.getTrack();
+		}
+		if (year == 0) {
+			year = info.getYear();
+		}
+	}
+
+	/**
+	 * Answer <code>true</code> if the duration taken from the ID3v2 tag may be used.
+	 */
+	private boolean isTagDurationTrusted() {
+		if (options.getDurationStrategy() != DurationStrategy.TRUST_TAGS || options.isScanRequired()) {
+			return false;
+		}
+		return durationMethod == DurationMethod.TAG;
+	}
+
+
+	/**
+	 * Answer the method which produced the duration.
+	 * @return duration method or <code>null</code> if the duration is unknown
+	 */
+	public DurationMethod getDurationMethod() {
+		return durationMethod;
+	}
+
+	/**
+	 * Answer <code>true</code> if the duration has been calculated by scanning all audio frames.
+	 * Durations taken from a tag or VBR header, extrapolated or sampled are considered estimates,
+	 * which may be refined by {@link MP3DurationRefiner}.
+	 * @return <code>true</code> for an exact duration
+	 */
+	public boolean isDurationExact() {
+		return durationMethod == DurationMethod.SCAN;
+	}
+
+	/**
+	 * Answer the Xing/Info/VBRI header found in the first audio frame.
+	 * This is only available if the duration has been calculated from the audio frames.
+	 * @return VBR header or <code>null</code>
+	 */
+	public MP3VBRHeader getVBRHeader() {
+		return vbrHeader;
+	}
+
+	/**
+	 * Answer the frame index built while scanning the audio frames (see {@link MP3Options#setFrameIndexInterval(int)}).
+	 * @return frame index or <code>null</code>
+	 */
+	public MP3FrameIndex getFrameIndex() {
+		return frameIndex;
+	}
+
+	/**
+	 * Answer the integrity report collected while scanning the audio frames (see {@link MP3Options#setAudit(boolean)}).
+	 * @return audit or <code>null</code>
+	 */
+	public MP3Audit getAudit() {
+		return audit;
+	}
+
+	/**
+	 * Answer the digest of the audio frame bytes (see {@link MP3Options#setDigestAlgorithm(String)}).
+	 * @return digest or <code>null</code>
+	 */
+	public byte[] getAudioDigest() {
+		return audioDigest;
+	}
+
+	/**
+	 * Answer the sample rate, taken from the first audio frame.
+	 * @return sample rate (Hz) or <code>0</code> if no audio frame has been found
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Answer the number of channels, taken from the first audio frame.
+	 * @return number of channels (<code>1</code> or <code>2</code>), or <code>0</code> if no audio frame has been found
+	 */
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Answer the average bitrate. This is calculated from the scanned frames, or taken from the VBR header
+	 * or the first frame if frames have not been scanned.
+	 * @return average bitrate (bits per second) or <code>0</code> if no audio frame has been found
+	 */
+	public int getBitrate() {
+		return bitrate;
+	}
+
+	/**
+	 * Answer the minimum bitrate of the scanned frames (or of a CBR stream).
+	 * @return minimum bitrate (bits per second) or <code>0</code> if unknown
+	 */
+	public int getMinBitrate() {
+		return minBitrate;
+	}
+
+	/**
+	 * Answer the maximum bitrate of the scanned frames (or of a CBR stream).
+	 * @return maximum bitrate (bits per second) or <code>0</code> if unknown
+	 */
+	public int getMaxBitrate() {
+		return maxBitrate;
+	}
+
+	/**
+	 * Answer <code>true</code> if the stream has a variable bitrate, i.e. if a Xing/VBRI header indicates VBR
+	 * or if the scanned frames have different bitrates.
+	 * @return <code>true</code> for a VBR stream
+	 */
+	public boolean isVBR() {
+		return vbr;
+	}
+
+	/**
+	 * Answer the encoder string from the LAME extension of a Xing/Info header.
+	 * @return encoder (e.g. <code>"LAME3.99r"</code>) or <code>null</code>
+	 */
+	public String getEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * Answer the error bound of a sampled duration estimate (see {@link DurationStrategy#SAMPLED}).
+	 * The actual duration is expected to be within <code>getDuration() &plusmn; getDurationError()</code>
+	 * (about 95% confidence).
+	 * @return error bound (milliseconds) or <code>0</code> if the duration has not been estimated by sampling
+	 */
+	public long getDurationError() {
+		return durationError;
+	}
+
+	/**
+	 * Answer the position before which a frame search starting at the given position must find a frame.
+	 * @param position search start position
+	 * @param maxResyncDistance maximum resync distance or <code>0</code> if unlimited
+	 * @return limit position
+	 */
+	static long resyncLimit(long position, long maxResyncDistance) {
+		return maxResyncDistance > 0 && maxResyncDistance < Long.MAX_VALUE - position ? position + maxResyncDistance : Long.MAX_VALUE;
+	}
+
 	/**
 	 * Searches for an audio frame with a compatible follow-up header.
-	 * The stop condition is be used to make sure that the search ends as soon as the stop condition says so.
-	 * This method reads the follow-up frame header and checks it for compatibility with the header of the
-	 * candidate frame. If compatible, the next header is attached to the frame and the frame is returned.
-	 * Otherwise, the frame is discarded.
+	 * Reads are limited to the input's audio region. For a candidate frame, this method first skips to the
+	 * follow-up frame header and checks it for compatibility with the header of the candidate frame. Only if
+	 * compatible (or if the audio region or stream ends after the candidate frame), the frame data is read and
+	 * the frame is returned. Otherwise, the frame is discarded. This way, false syncs cost a constant amount of
+	 * work, not a frame's size. The search gives up after {@link MP3Options#getMaxResyncDistance()} bytes.
 	 * @param data
-	 * @param stopCondition
 	 * @return frame or <code>null</code>
 	 * @throws IOException
 	 */
-	MP3Frame readFirstFrame(MP3Input data, StopReadCondition stopCondition) throws IOException {
+	MP3Frame readFirstFrame(MP3Input data) throws IOException {
+		long limit = resyncLimit(data.getPosition(), options.getMaxResyncDistance());
+		byte[] nextHeader = new byte[4];
 		int b0 = 0;
-		int b1 = stopCondition.stopRead(data) ? -1 : data.read();
-		while (b1 != -1) {
+		int b1 = data.read();
+		while (b1 != -1 && data.getPosition() - 2 < limit) {
 			if (b0 == 0xFF && (b1 & 0xE0) == 0xE0) { // first 11 bits should be 1
 				data.mark(2); // set mark at b2
-				int b2 = stopCondition.stopRead(data) ? -1 : data.read();
+				int b2 = data.read();
 				if (b2 == -1) {
 					break;
 				}
-				int b3 = stopCondition.stopRead(data) ? -1 : data.read();
+				int b3 = data.read();
 				if (b3 == -1) {
 					break;
 				}
-				MP3Frame.Header header = null;
-				try {
-					header = new MP3Frame.Header(b1, b2, b3);
-				} catch (MP3Exception e) {
-					// not a valid frame header
-				}
+				MP3Frame.Header header = MP3Frame.Header.tryDecode(b1, b2, b3);
 				if (header != null) { // we have a candidate
 					/*
 					 * The code gets a bit complex here, because we need to be able to reset() to b2 if
@@ -147,44 +508,36 @@ public class MP3Info extends AudioInfo {
 					 */
 					data.reset(); // reset input to b2
 					data.mark(header.getFrameSize() + 2); // rest of frame (size - 2) + next header
-					/*
-					 * read frame data
-					 */
-					byte[] frameBytes = new byte[header.getFrameSize()];
-					frameBytes[0] = (byte)0xFF;
-					frameBytes[1] = (byte)b1;
 					try {
-						data.readFully(frameBytes, 2, frameBytes.length - 2); // may throw EOFException
+						data.skipFully(header.getFrameSize() - 2); // may throw EOFException
 					} catch (EOFException e) {
 						break;
 					}
-					
-					MP3Frame frame = new MP3Frame(header, frameBytes);
 					/*
-					 * read next header  
+					 * read next header
 					 */
-					if (!frame.isChecksumError()) {
-						int nextB0 = stopCondition.stopRead(data) ? -1 : data.read();
-						int nextB1 = stopCondition.stopRead(data) ? -1 : data.read();
-						if (nextB0 == -1 || nextB1 == -1) {
+					boolean accept = false;
+					boolean tag = data.getPosition() == data.getTagPosition();
+					int count = data.readAtMost(nextHeader, 0, 4);
+					if (count < 2 || tag && count >= 3 && nextHeader[0] == 'T' && nextHeader[1] == 'A' && nextHeader[2] == 'G') { // end of audio
+						accept = true;
+					} else if (nextHeader[0] == (byte)0xFF && (nextHeader[1] & 0xFE) == (b1 & 0xFE)) { // quick check: nextB1 must match b1's version & layer
+						MP3Frame.Header next = count < 4 ? null : MP3Frame.Header.tryDecode(nextHeader[1] & 0xFF, nextHeader[2] & 0xFF, nextHeader[3] & 0xFF);
+						accept = count < 4 || next != null && next.isCompatible(header);
+					}
+					data.reset(); // reset input to b2
+					if (accept) {
+						/*
+						 * read frame data
+						 */
+						byte[] frameBytes = new byte[header.getFrameSize()];
+						frameBytes[0] = (byte)0xFF;
+						frameBytes[1] = (byte)b1;
+						data.readFully(frameBytes, 2, frameBytes.length - 2);
+						MP3Frame frame = new MP3Frame(header, frameBytes);
+						if (!frame.isChecksumError()) {
 							return frame;
 						}
-						if (nextB0 == 0xFF && (nextB1 & 0xFE) == (b1 & 0xFE)) { // quick check: nextB1 must match b1's version & layer
-							int nextB2 = stopCondition.stopRead(data) ? -1 : data.read();
-							int nextB3 = stopCondition.stopRead(data) ? -1 : data.read();
-							if (nextB2 == -1 || nextB3 == -1) {
-								return frame;
-							}
-							try {
-								if (new MP3Frame.Header(nextB1, nextB2, nextB3).isCompatible(header)) {
-									data.reset(); // reset input to b2
-									data.skipFully(frameBytes.length - 2); // skip to end of frame
-									return frame;
-								}
-							} catch (MP3Exception e) {
-								// not a valid frame header
-							}
-						}
 					}
 				}
 
@@ -195,57 +548,65 @@ public class MP3Info extends AudioInfo {
 			}
 
 			/*
-			 * read next byte
+			 * read next byte (fast forward to next sync candidate if possible)
 			 */
 			b0 = b1;
-			b1 = stopCondition.stopRead(data) ? -1 : data.read();
+			if (b0 != 0xFF && data.skipToSync(limit)) {
+				b0 = data.read();
+			}
+			b1 = data.read();
 		}
 		return null;
 	}
 
 	/**
 	 * Reads the audio frame immediately following the given previous frame.
-	 * The stop condition is be used to make sure that the search ends as soon as the stop condition says so.
-	 * This method reads the follow-up frame header and checks it for compatibility with the header of the
-	 * previous frame. If compatible, the next header is attached to the returned frame.
+	 * Reads are limited to the input's audio region. This method reads the follow-up frame header and checks
+	 * it for compatibility with the header of the previous frame. If compatible, the frame payload is skipped
+	 * and a header-only frame is returned. If requested, a CRC protected frame keeps its checksum bytes, and
+	 * the frame is read into a reused buffer, which is viewed by {@link #frameData}.
 	 * @param data
-	 * @param stopCondition
 	 * @param previousFrame
+	 * @param checksum whether to keep the checksum bytes of CRC protected frames
+	 * @param withData whether to read the frame data
 	 * @return next frame or <code>null</code>
 	 * @throws IOException
 	 */
-	MP3Frame readNextFrame(MP3Input data, StopReadCondition stopCondition, MP3Frame previousFrame) throws IOException {
-		MP3Frame.Header previousHeader = previousFrame.getHeader();
+	MP3Frame readNextFrame(MP3Input data, MP3Frame previousFrame, boolean checksum, boolean withData) throws IOException {
+		byte[] header = headerBuffer;
 		data.mark(4);
-		int b0 = stopCondition.stopRead(data) ? -1 : data.read();
-		int b1 = stopCondition.stopRead(data) ? -1 : data.read();
-		if (b0 == -1 || b1 == -1) {
-			return null;
-		}
-		if (b0 == 0xFF && (b1 & 0xE0) == 0xE0) { // first 11 bits should be 1
-			int b2 = stopCondition.stopRead(data) ? -1 : data.read();
-			int b3 = stopCondition.stopRead(data) ? -1 : data.read();
-			if (b2 == -1 || b3 == -1) {
-				return null;
-			}
-			MP3Frame.Header nextHeader = null;
-			try {
-				nextHeader = new MP3Frame.Header(b1, b2, b3);
-			} catch (MP3Exception e) {
-				// not a valid frame header
-			}
-			if (nextHeader != null && nextHeader.isCompatible(previousHeader)) {
-				byte[] frameBytes = new byte[nextHeader.getFrameSize()];
-				frameBytes[0] = (byte)b0;
-				frameBytes[1] = (byte)b1;
-				frameBytes[2] = (byte)b2;
-				frameBytes[3] = (byte)b3;
+		if (data.readAtMost(header, 0, 4) == 4 && header[0] == (byte)0xFF && (header[1] & 0xE0) == 0xE0) { // first 11 bits should be 1
+			MP3Frame.Header nextHeader = MP3Frame.Header.tryDecode(header[1] & 0xFF, header[2] & 0xFF, header[3] & 0xFF);
+			if (nextHeader != null && nextHeader.isCompatible(previousFrame.getHeader())) {
+				int checksumSize = checksum ? nextHeader.getChecksumSize() : 0;
+				byte[] checksumBytes = null;
+				/*
+				 * we only need the header (and checksum bytes), so skip the rest of the frame
+				 */
 				try {
-					data.readFully(frameBytes, 4, frameBytes.length - 4);
+					if (withData) {
+						int frameSize = nextHeader.getFrameSize();
+						if (frameBuffer == null || frameBuffer.length < frameSize) {
+							frameBuffer = new byte[frameSize];
+						}
+						System.arraycopy(header, 0, frameBuffer, 0, 4);
+						data.readFully(frameBuffer, 4, frameSize - 4);
+						frameData = ByteBuffer.wrap(frameBuffer, 0, frameSize).asReadOnlyBuffer();
+						if (checksumSize > 0) {
+							checksumBytes = Arrays.copyOf(frameBuffer, checksumSize);
+						}
+					} else if (checksumSize > 0) {
+						checksumBytes = new byte[checksumSize];
+						System.arraycopy(header, 0, checksumBytes, 0, 4);
+						data.readFully(checksumBytes, 4, checksumSize - 4);
+						data.skipFully(nextHeader.getFrameSize() - checksumSize);
+					} else {
+						data.skipFully(nextHeader.getFrameSize() - 4);
+					}
 				} catch (EOFException e) {
 					return null;
 				}
-				return new MP3Frame(nextHeader, frameBytes);
+				return new MP3Frame(nextHeader, checksumBytes);
 			}
 		}
 		data.reset();
@@ -253,53 +614,414 @@ public class MP3Info extends AudioInfo {
 	}
 
 	/**
-	 * Calculates the duration in milliseconds.
+	 * Calculates the duration in milliseconds, according to the duration strategy.
 	 * 
-	 * @param data MP3 input
+	 * @param reader MP3 frame reader
 	 * @param totalLength MP3 file length
-	 * @param stopCondition
 	 * @return
 	 * @throws IOException
 	 * @throws MP3Exception
 	 */
-	long calculateDuration(MP3Input data, long totalLength, StopReadCondition stopCondition) throws IOException, MP3Exception {
-		MP3Frame frame = readFirstFrame(data, stopCondition);
-		if (frame != null) {
-			// check for Xing header
-			int numberOfFrames = frame.getNumberOfFrames();
-			if (numberOfFrames > 0) { // from Xing/VBRI header
-				return frame.getHeader().getTotalDuration(numberOfFrames * frame.getSize());
-			} else { // scan file
-				numberOfFrames = 1;
-
-				long firstFramePosition = data.getPosition() - frame.getSize();
-				long frameSizeSum = frame.getSize();
-
-				int firstFrameBitrate = frame.getHeader().getBitrate();
-				long bitrateSum = firstFrameBitrate;
-				boolean vbr = false;
-				int cbrThreshold = 10000 / frame.getHeader().getDuration(); // assume CBR after 10 seconds
-
-				while (true) {
-					if (numberOfFrames == cbrThreshold && !vbr && totalLength > 0) {
-						return frame.getHeader().getTotalDuration(totalLength - firstFramePosition);
-					}
-					if ((frame = readNextFrame(data, stopCondition, frame)) == null) {
-						break;
-					}
-					int bitrate = frame.getHeader().getBitrate();
-					if (bitrate != firstFrameBitrate) {
-						vbr = true;
+	long calculateDuration(FrameReader reader, long totalLength) throws IOException, MP3Exception {
+		MP3Frame frame = reader.readFirstFrame();
+		if (frame == null) {
+			throw new MP3Exception("No audio frame");
+		}
+		long firstFramePosition = reader.getPosition() - frame.getSize();
+		// check for Xing/Info/VBRI header
+		vbrHeader = MP3VBRHeader.read(frame);
+		MP3Frame.Header header = frame.getHeader();
+		sampleRate = header.getFrequency();
+		channels = header.getChannelMode() == MP3Frame.Header.MPEG_CHANNEL_MODE_MONO ? 1 : 2;
+		if (vbrHeader != null) {
+			encoder = vbrHeader.getEncoder();
+			vbr = vbrHeader.getType() != MP3VBRHeader.Type.INFO;
+		}
+		setHeaderBitrate(header);
+		if (options.getDigestAlgorithm() != null) {
+			long origin = vbrHeader != null ? firstFramePosition + frame.getSize() : firstFramePosition;
+			digest = new MP3AudioDigest(options.createDigest(), origin, options.getDigestStride(), options.getDigestWindowSize());
+			if (vbrHeader == null) {
+				digest.update(firstFramePosition, ByteBuffer.wrap(frame.getBytes()));
+			}
+		}
+		long result = calculateDuration(reader, frame, firstFramePosition, totalLength);
+		if (digest != null) {
+			if (digest.isSampled()) {
+				walkDigestWindows(reader, frame, Long.MAX_VALUE);
+			}
+			audioDigest = digest.digest();
+		}
+		return result;
+	}
+
+	/**
+	 * Calculates the duration in milliseconds from the first frame, according to the duration strategy.
+	 *
+	 * @param reader MP3 frame reader, positioned after the first frame
+	 * @param frame first frame
+	 * @param firstFramePosition position of the first frame
+	 * @param totalLength MP3 file length
+	 * @return duration
+	 * @throws IOException
+	 * @throws MP3Exception
+	 */
+	private long calculateDuration(FrameReader reader, MP3Frame frame, long firstFramePosition, long totalLength) throws IOException, MP3Exception {
+		DurationStrategy strategy = options.getDurationStrategy();
+		if (isTagDurationTrusted()) {
+			if (duration < TAG_DURATION_CHECK) {
+				return duration;
+			}
+			// cross-validate long tag duration
+			long estimate = estimateDuration(frame, firstFramePosition, totalLength);
+			if (estimate < 0 || Math.abs(duration - estimate) <= options.getTagDurationTolerance() * estimate + frame.getHeader().getDuration()) {
+				return duration;
+			}
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine("Tag duration " + duration + " doesn't match estimated duration " + estimate);
+			}
+		}
+		if (strategy == DurationStrategy.EXACT_SCAN || options.isScanRequired()) {
+			return scanFrames(reader, frame, firstFramePosition, totalLength, 0);
+		} else if (vbrHeader != null && vbrHeader.getFrames() > 0) { // from Xing/VBRI header
+			durationMethod = DurationMethod.HEADER;
+			return frame.getHeader().getTotalDuration(vbrHeader.getFrames() * (long)frame.getSize());
+		} else if (vbrHeader != null && vbrHeader.getType() == MP3VBRHeader.Type.INFO && (vbrHeader.getBytes() > 0 || totalLength > 0)) { // CBR
+			durationMethod = DurationMethod.HEADER;
+			return frame.getHeader().getTotalDuration(vbrHeader.getBytes() > 0 ? vbrHeader.getBytes() : totalLength - firstFramePosition);
+		} else if (strategy != DurationStrategy.TRUST_TAGS && totalLength <= 0) {
+			throw new MP3Exception("Duration strategy " + strategy + " requires file length");
+		} else if (strategy == DurationStrategy.HEADER_ONLY) { // assume CBR
+			durationMethod = DurationMethod.CBR;
+			return frame.getHeader().getTotalDuration(totalLength - firstFramePosition);
+		} else if (strategy == DurationStrategy.SAMPLED) {
+			if (totalLength - firstFramePosition > 2L * options.getDurationSamples() * options.getDurationSampleSize()) {
+				durationMethod = DurationMethod.SAMPLED;
+				return estimateDuration(reader, frame, firstFramePosition, totalLength);
+			}
+			return scanFrames(reader, frame, firstFramePosition, totalLength, 0);
+		} else { // scan file, assume CBR after 10 seconds
+			return scanFrames(reader, frame, firstFramePosition, totalLength, 10000 / frame.getHeader().getDuration());
+		}
+	}
+
+	/**
+	 * Hash the frames within the digest windows between the reader's position and the given target position.
+	 * Within a window, we continue with the frame at the current position (if any). Otherwise, we resync
+	 * at the window start.
+	 * @param reader MP3 frame reader
+	 * @param firstFrame first frame (used for compatibility checks)
+	 * @param target target position
+	 * @throws IOException
+	 */
+	private void walkDigestWindows(FrameReader reader, MP3Frame firstFrame, long target) throws IOException {
+		while (reader.getPosition() < target) {
+			long position = reader.getPosition();
+			long start = digest.getWindowStart(position);
+			if (start >= target) {
+				return;
+			}
+			MP3Frame frame = null;
+			ByteBuffer data = null;
+			if (start <= position) { // within window
+				if ((frame = reader.readNextFrame(firstFrame, false, true)) != null) {
+					data = reader.getFrameData();
+				} else if (reader.getPosition() > position) { // truncated frame
+					return;
+				}
+			}
+			if (frame == null) {
+				reader.seek(Math.max(start, position));
+				if ((frame = reader.readFirstFrame()) == null) { // end of audio
+					return;
+				}
+				data = ByteBuffer.wrap(frame.getBytes());
+			}
+			digest.update(reader.getPosition() - frame.getSize(), data);
+		}
+	}
+
+	/**
+	 * Set the stream bitrate from the VBR header's average or from the first frame. Unless the stream is
+	 * known to be VBR, we assume CBR.
+	 */
+	private void setHeaderBitrate(MP3Frame.Header header) {
+		if (vbr) {
+			bitrate = vbrHeader.getFrames() > 0 && vbrHeader.getBytes() > 0
+					? (int)(8L * vbrHeader.getBytes() * header.getFrequency() / (vbrHeader.getFrames() * (long)header.getSampleCount()))
+					: header.getBitrate();
+		} else {
+			bitrate = minBitrate = maxBitrate = header.getBitrate();
+		}
+	}
+
+	/**
+	 * Record the bitrate of a scanned frame.
+	 */
+	private void addBitrate(int frameBitrate) {
+		if (minBitrate == 0 || frameBitrate < minBitrate) {
+			minBitrate = frameBitrate;
+		}
+		if (frameBitrate > maxBitrate) {
+			maxBitrate = frameBitrate;
+		}
+		if (minBitrate != maxBitrate) {
+			vbr = true;
+		}
+	}
+
+	/**
+	 * Answer a cheap duration estimate: from the Xing/VBRI header's frame count, from the Info header's
+	 * byte count, or from the first frame's bitrate and the audio length.
+	 *
+	 * @param frame first audio frame
+	 * @param firstFramePosition position of the first frame
+	 * @param totalLength MP3 file length
+	 * @return estimated duration or <code>-1</code> if there's no VBR header and the file length is unknown
+	 */
+	private long estimateDuration(MP3Frame frame, long firstFramePosition, long totalLength) {
+		if (vbrHeader != null && vbrHeader.getFrames() > 0) {
+			return frame.getHeader().getTotalDuration(vbrHeader.getFrames() * (long)frame.getSize());
+		} else if (vbrHeader != null && vbrHeader.getType() == MP3VBRHeader.Type.INFO && vbrHeader.getBytes() > 0) {
+			return frame.getHeader().getTotalDuration(vbrHeader.getBytes());
+		} else if (totalLength > 0) {
+			return frame.getHeader().getTotalDuration(totalLength - firstFramePosition);
+		}
+		return -1;
+	}
+
+	/**
+	 * Counts all frames and calculates the exact duration. A Xing/Info/VBRI header frame is not counted.
+	 * If requested, the frame index is built, the frames are audited and passed to the frame visitors. When auditing
+	 * or if requested, the scan resyncs after a sync loss. Otherwise, frames may be scanned in parallel.
+	 *
+	 * @param reader MP3 frame reader, positioned after the first frame
+	 * @param frame first audio frame
+	 * @param position position of the first frame
+	 * @param totalLength MP3 file length
+	 * @param cbrFrames number of frames after which CBR is assumed if the bitrate didn't change
+	 * (requires the file length, ignored if a scan is required), or <code>0</code> to count all frames
+	 * @return duration
+	 * @throws IOException
+	 */
+	private long scanFrames(FrameReader reader, MP3Frame frame, long position, long totalLength, int cbrFrames) throws IOException {
+		MP3Frame.Header header = frame.getHeader();
+		long firstFramePosition = position;
+		if (options.isScanRequired() || totalLength <= 0) {
+			cbrFrames = 0;
+		}
+		MP3FrameIndex index = options.getFrameIndexInterval() > 0 ? new MP3FrameIndex(options.getFrameIndexInterval(), header) : null;
+		MP3Audit audit = options.isAudit() ? new MP3Audit(header, vbrHeader, position) : null;
+		boolean resync = audit != null || options.isResync();
+		List<MP3FrameVisitor> visitors = options.getFrameVisitors();
+		boolean dataRequired = false;
+		for (MP3FrameVisitor visitor : visitors) {
+			dataRequired |= visitor.isDataRequired();
+		}
+		long frames = 0;
+		long bytes = 0;
+		minBitrate = maxBitrate = 0;
+		if (vbrHeader == null) {
+			frames++;
+			bytes += frame.getSize();
+			addBitrate(header.getBitrate());
+			if (index != null) {
+				index.add(position);
+			}
+			if (audit != null) {
+				audit.check(frame, position);
+			}
+			visitFrame(visitors, frame, position, ByteBuffer.wrap(frame.getBytes()).asReadOnlyBuffer());
+		}
+		boolean parallel = !options.isScanRequired() && !resync && digest == null && options.getScanSegments() > 1 && reader instanceof MP3BufferInput;
+		while (true) {
+			if (cbrFrames > 0 && frames >= cbrFrames && !vbr) { // assume CBR
+				durationMethod = DurationMethod.CBR;
+				return header.getTotalDuration(totalLength - firstFramePosition);
+			}
+			if (parallel && (cbrFrames == 0 || vbr)) { // scan remaining frames in parallel
+				MP3SegmentScan.Segment rest = MP3SegmentScan.scan((MP3BufferInput)reader, frame, options.getScanSegments(), options.getScanPool());
+				frames += rest.getFrames();
+				bytes += rest.getFrameSizeSum();
+				if (rest.getFrames() > 0) {
+					addBitrate(rest.getMinBitrate());
+					addBitrate(rest.getMaxBitrate());
+				}
+				break;
+			}
+			position = reader.getPosition();
+			ByteBuffer data = null;
+			boolean readData = dataRequired || digest != null && digest.isInWindow(position);
+			if ((frame = reader.readNextFrame(frame, audit != null, readData)) == null) {
+				if (!resync || (frame = resync(reader, header, position, audit)) == null) {
+					break;
+				}
+				position = reader.getPosition() - frame.getSize();
+				data = ByteBuffer.wrap(frame.getBytes()).asReadOnlyBuffer();
+			} else if (readData) {
+				data = reader.getFrameData();
+			}
+			if (totalLength > 0 && reader.getPosition() > totalLength) { // skipped beyond EOF (truncated frame)
+				if (audit != null) {
+					audit.add(MP3Audit.Type.TRUNCATED_FRAME, position, null);
+				}
+				break;
+			}
+			frames++;
+			bytes += frame.getSize();
+			addBitrate(frame.getHeader().getBitrate());
+			if (index != null) {
+				index.add(position);
+			}
+			if (audit != null) {
+				audit.check(frame, position);
+			}
+			visitFrame(visitors, frame, position, data);
+			if (digest != null && data != null) {
+				digest.update(position, data.duplicate());
+			}
+		}
+		if (audit != null) {
+			audit.finish();
+		}
+		if (frames > 0) {
+			bitrate = (int)(8 * bytes * header.getFrequency() / (frames * header.getSampleCount()));
+		}
+		frameIndex = index;
+		this.audit = audit;
+		durationMethod = DurationMethod.SCAN;
+		return 1000L * frames * header.getSampleCount() / header.getFrequency();
+	}
+
+	private static void visitFrame(List<MP3FrameVisitor> visitors, MP3Frame frame, long position, ByteBuffer data) {
+		for (MP3FrameVisitor visitor : visitors) {
+			visitor.visitFrame(frame.getHeader(), position, frame.getSize(), data != null && visitor.isDataRequired() ? data.duplicate() : null);
+		}
+	}
+
+	/**
+	 * Called by a resyncing scan if no frame could be read at the given position. Reports a truncated frame
+	 * or resyncs and reports a sync loss to the audit (if any).
+	 * @param reader MP3 frame reader
+	 * @param header first frame's header
+	 * @param position position at which the frame could not be read
+	 * @param audit audit or <code>null</code>
+	 * @return resynced frame (compatible to the given header) or <code>null</code>
+	 * @throws IOException
+	 */
+	private MP3Frame resync(FrameReader reader, MP3Frame.Header header, long position, MP3Audit audit) throws IOException {
+		if (reader.getPosition() > position) {
+			if (audit != null) {
+				audit.add(MP3Audit.Type.TRUNCATED_FRAME, position, null);
+			}
+			return null;
+		}
+		MP3Frame frame = reader.readFirstFrame();
+		if (frame == null) { // end of audio
+			return null;
+		}
+		long resyncPosition = reader.getPosition() - frame.getSize();
+		if (!frame.getHeader().isCompatible(header)) {
+			if (audit != null) {
+				audit.add(MP3Audit.Type.SYNC_LOSS, position, "incompatible frame at " + resyncPosition);
+			}
+			return null;
+		}
+		if (audit != null) {
+			audit.add(MP3Audit.Type.SYNC_LOSS, position, "resync at " + resyncPosition);
+		}
+		return frame;
+	}
+
+	/*
+	 * Two-sided 95% quantiles of Student's t-distribution for 1..10 degrees of freedom.
+	 */
+	private static final double[] T_QUANTILES = { 12.71, 4.30, 3.18, 2.78, 2.57, 2.45, 2.36, 2.31, 2.26, 2.23 };
+
+	/**
+	 * Estimates the duration in milliseconds from sample windows spread over the file.
+	 * In each window, we resync and measure the average number of bytes per sample. The mean
+	 * is extrapolated to the audio length. The last window ends at the end of the file, which tells us
+	 * where the audio ends (e.g. before an ID3v1 tag). If the last window cannot be scanned, the audio ends
+	 * before trailing tags (if the reader knows them) or at the end of the file. The error bound is derived
+	 * from the windows' standard error.
+	 *
+	 * @param reader MP3 frame reader, positioned after the first frame
+	 * @param firstFrame first audio frame
+	 * @param firstFramePosition position of the first frame
+	 * @param totalLength MP3 file length
+	 * @return estimated duration
+	 * @throws IOException
+	 */
+	private long estimateDuration(FrameReader reader, MP3Frame firstFrame, long firstFramePosition, long totalLength) throws IOException {
+		MP3Frame.Header firstHeader = firstFrame.getHeader();
+		int windows = options.getDurationSamples();
+		int windowSize = options.getDurationSampleSize();
+		long windowSpacing = (totalLength - firstFramePosition - windowSize) / (windows - 1);
+		double[] bytesPerSample = new double[windows];
+		int count = 0;
+		long bytesSum = 0;
+		long samplesSum = 0;
+		long audioEnd = reader instanceof MP3BufferInput ? ((MP3BufferInput)reader).getEndPosition() : totalLength;
+		minBitrate = maxBitrate = 0;
+		addBitrate(firstHeader.getBitrate());
+		MP3Frame frame = firstFrame;
+		for (int i = 0; i < windows; i++) {
+			boolean last = i == windows - 1;
+			if (i > 0) { // resync at window start
+				long windowStart = firstFramePosition + windowSpacing * i;
+				if (digest != null && digest.isSampled()) {
+					walkDigestWindows(reader, firstFrame, windowStart);
+				}
+				reader.seek(Math.max(reader.getPosition(), windowStart));
+				if ((frame = reader.readFirstFrame()) == null) {
+					break;
+				}
+				if (!frame.getHeader().isCompatible(firstHeader)) {
+					continue;
+				}
+				if (digest != null) {
+					digest.update(reader.getPosition() - frame.getSize(), ByteBuffer.wrap(frame.getBytes()));
+				}
+			}
+			int frames = 1;
+			long bytes = frame.getSize();
+			long position = reader.getPosition();
+			while (last || bytes < windowSize) {
+				boolean hash = digest != null && digest.isInWindow(position);
+				if ((frame = reader.readNextFrame(frame, false, hash)) == null || reader.getPosition() > totalLength) {
+					if (last) {
+						audioEnd = position;
 					}
-					bitrateSum += bitrate;
-					frameSizeSum += frame.getSize();
-					numberOfFrames++;
+					break;
 				}
-				long duration = 1000L * frameSizeSum * numberOfFrames * 8 / bitrateSum; // == 1000 * frameSizeSum / (8 * averageBitrate)
-				return duration;
+				if (hash) {
+					digest.update(position, reader.getFrameData());
+				}
+				position = reader.getPosition();
+				bytes += frame.getSize();
+				addBitrate(frame.getHeader().getBitrate());
+				frames++;
+			}
+			long samples = frames * (long)firstHeader.getSampleCount();
+			bytesPerSample[count++] = (double)bytes / samples;
+			bytesSum += bytes;
+			samplesSum += samples;
+		}
+		double mean = (double)bytesSum / samplesSum;
+		bitrate = (int)(8 * mean * firstHeader.getFrequency());
+		long duration = (long)(1000.0 * (audioEnd - firstFramePosition) / mean / firstHeader.getFrequency());
+		if (count > 1) {
+			double variance = 0;
+			for (int i = 0; i < count; i++) {
+				variance += (bytesPerSample[i] - mean) * (bytesPerSample[i] - mean);
 			}
+			double standardError = Math.sqrt(variance / (count - 1) / count);
+			double t = count - 1 <= T_QUANTILES.length ? T_QUANTILES[count - 2] : 2.0;
+			durationError = (long)Math.ceil(t * duration * standardError / mean) + firstHeader.getDuration();
 		} else {
-			throw new MP3Exception("No audio frame");
+			durationError = duration;
 		}
+		return duration;
 	}
 }
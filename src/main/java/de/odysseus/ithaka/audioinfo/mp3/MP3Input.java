@@ -22,6 +22,14 @@ import java.io.InputStream;
 import de.odysseus.ithaka.audioinfo.util.PositionInputStream;
 
 public class MP3Input extends PositionInputStream {
+	private static final int SYNC_BUFFER_SIZE = 4096;
+	private static final int MIN_SYNC_CHUNK_SIZE = 16;
+
+	private byte[] syncBuffer;
+
+	private long endPosition = Long.MAX_VALUE; // end of audio region
+	private long tagPosition = -1; // position of a possible ID3v1 tag
+
 	public MP3Input(InputStream delegate) throws IOException {
 		super(delegate);
 	}
@@ -30,6 +38,67 @@ public class MP3Input extends PositionInputStream {
 		super(delegate, position);
 	}
 
+	/**
+	 * Set the audio region's end. Reads are limited to the end position.
+	 * For streams, the presence of an ID3v1 tag cannot be determined up front. Instead, a tag position
+	 * can be given, which frame readers check when a frame ends there.
+	 * @param endPosition end position
+	 * @param tagPosition position of a possible ID3v1 tag or <code>-1</code>
+	 */
+	void setAudioEnd(long endPosition, long tagPosition) {
+		this.endPosition = endPosition;
+		this.tagPosition = tagPosition;
+	}
+
+	/**
+	 * @return position of a possible ID3v1 tag or <code>-1</code>
+	 */
+	long getTagPosition() {
+		return tagPosition;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (getPosition() >= endPosition) {
+			return -1;
+		}
+		return super.read();
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		long remaining = endPosition - getPosition();
+		if (len > remaining) {
+			if (remaining <= 0) {
+				return len == 0 ? 0 : -1;
+			}
+			len = (int)remaining;
+		}
+		return super.read(b, off, len);
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		return super.skip(Math.min(n, endPosition - getPosition()));
+	}
+
+	/**
+	 * Read up to the given number of bytes, blocking until all bytes have been read or EOF is reached.
+	 * @return number of bytes read
+	 */
+	int readAtMost(byte b[], int off, int len) throws IOException {
+		int total = 0;
+		while (total < len) {
+			int current = read(b, off + total, len - total);
+			if (current > 0) {
+				total += current;
+			} else {
+				break;
+			}
+		}
+		return total;
+	}
+
 	public final void readFully(byte b[], int off, int len) throws IOException {
 		int total = 0;
 		while (total < len) {
@@ -54,6 +123,41 @@ public class MP3Input extends PositionInputStream {
 		}
 	}
 	
+	/**
+	 * Skip to the next frame sync candidate, i.e. a <code>0xFF</code> byte followed by a byte with
+	 * its upper three bits set. Bytes are read in chunks (using <code>mark/reset</code>) and searched
+	 * by {@link MP3Sync}. Chunks start small and double while no candidate is found, so the number of bytes
+	 * read is proportional to the number of bytes skipped, even if candidates are dense.
+	 * No bytes at or beyond the end of the audio region are consumed.
+	 * @param limit position before which the candidate must start
+	 * @return <code>true</code> if positioned at a sync candidate
+	 * @throws IOException
+	 */
+	boolean skipToSync(long limit) throws IOException {
+		if (syncBuffer == null) {
+			syncBuffer = new byte[SYNC_BUFFER_SIZE];
+		}
+		long end = limit < endPosition ? limit + 1 : endPosition; // candidate's second byte may be at the limit
+		int chunkSize = MIN_SYNC_CHUNK_SIZE;
+		while (end - getPosition() > 1) {
+			int length = (int)Math.min(chunkSize, end - getPosition());
+			mark(length);
+			int count = read(syncBuffer, 0, length);
+			reset();
+			if (count < 2) {
+				return false;
+			}
+			int index = MP3Sync.find(syncBuffer, 0, count);
+			if (index >= 0) {
+				skipFully(index);
+				return true;
+			}
+			skipFully(count - 1); // last byte may start a candidate
+			chunkSize = Math.min(2 * chunkSize, syncBuffer.length);
+		}
+		return false;
+	}
+
 	public String toString() {
 		return "mp3[pos=" + getPosition() + "]";
 	}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Options controlling how {@link MP3Info} reads a file.
+ */
+public class MP3Options {
+	public static final int DEFAULT_DURATION_SAMPLES = 8;
+	public static final int DEFAULT_DURATION_SAMPLE_SIZE = 32 * 1024;
+	public static final double DEFAULT_TAG_DURATION_TOLERANCE = 0.02;
+	public static final int DEFAULT_DIGEST_WINDOW_SIZE = 32 * 1024;
+
+	private DurationStrategy durationStrategy = DurationStrategy.TRUST_TAGS;
+	private double tagDurationTolerance = DEFAULT_TAG_DURATION_TOLERANCE;
+	private int durationSamples = DEFAULT_DURATION_SAMPLES;
+	private int durationSampleSize = DEFAULT_DURATION_SAMPLE_SIZE;
+	private long maxResyncDistance;
+	private int tagBufferSize = ID3v2Info.DEFAULT_BUFFER_SIZE;
+	private int scanSegments;
+	private ForkJoinPool scanPool;
+	private int frameIndexInterval;
+	private boolean audit;
+	private boolean resync;
+	private final List<MP3FrameVisitor> frameVisitors = new ArrayList<MP3FrameVisitor>();
+	private String digestAlgorithm;
+	private long digestStride;
+	private int digestWindowSize = DEFAULT_DIGEST_WINDOW_SIZE;
+
+	/**
+	 * @return duration strategy
+	 */
+	public DurationStrategy getDurationStrategy() {
+		return durationStrategy;
+	}
+
+	/**
+	 * @param durationStrategy duration strategy (default is {@link DurationStrategy#TRUST_TAGS})
+	 */
+	public void setDurationStrategy(DurationStrategy durationStrategy) {
+		if (durationStrategy == null) {
+			throw new IllegalArgumentException("Duration strategy must not be null");
+		}
+		this.durationStrategy = durationStrategy;
+	}
+
+	/**
+	 * @return relative tolerance used to check a tag duration
+	 */
+	public double getTagDurationTolerance() {
+		return tagDurationTolerance;
+	}
+
+	/**
+	 * Set the relative tolerance used by {@link DurationStrategy#TRUST_TAGS} to check long tag durations (one hour
+	 * and more). Such a duration is compared to a cheap estimate, taken from the Xing/VBRI header or from the first
+	 * frame's bitrate and the file length. If they differ by more than <code>tolerance * estimate</code>
+	 * (plus one frame), the duration is calculated as if there was no tag duration.
+	 * @param tagDurationTolerance relative tolerance (default is {@link #DEFAULT_TAG_DURATION_TOLERANCE})
+	 */
+	public void setTagDurationTolerance(double tagDurationTolerance) {
+		if (!(tagDurationTolerance >= 0)) {
+			throw new IllegalArgumentException("Invalid tag duration tolerance: " + tagDurationTolerance);
+		}
+		this.tagDurationTolerance = tagDurationTolerance;
+	}
+
+	/**
+	 * @return number of sample windows used by {@link DurationStrategy#SAMPLED}
+	 */
+	public int getDurationSamples() {
+		return durationSamples;
+	}
+
+	/**
+	 * Set the number of sample windows used by {@link DurationStrategy#SAMPLED}.
+	 * Instead of scanning all frames, the given number of windows spread over the file are
+	 * read and the average frame size per sample is extrapolated to the file length. This bounds
+	 * the number of bytes read to about <code>durationSamples * durationSampleSize</code>.
+	 * The estimation's error bound is reported by {@link MP3Info#getDurationError()}.
+	 * @param durationSamples number of sample windows (at least two)
+	 */
+	public void setDurationSamples(int durationSamples) {
+		if (durationSamples < 2) {
+			throw new IllegalArgumentException("Invalid number of duration samples: " + durationSamples);
+		}
+		this.durationSamples = durationSamples;
+	}
+
+	/**
+	 * @return number of bytes read per sample window
+	 */
+	public int getDurationSampleSize() {
+		return durationSampleSize;
+	}
+
+	/**
+	 * @param durationSampleSize number of bytes read per sample window
+	 */
+	public void setDurationSampleSize(int durationSampleSize) {
+		if (durationSampleSize <= 0) {
+			throw new IllegalArgumentException("Invalid duration sample size: " + durationSampleSize);
+		}
+		this.durationSampleSize = durationSampleSize;
+	}
+
+	/**
+	 * @return maximum number of bytes searched for a frame sync, or <code>0</code> if unlimited (default)
+	 */
+	public long getMaxResyncDistance() {
+		return maxResyncDistance;
+	}
+
+	/**
+	 * Limit the search for an audio frame (at the start of the audio region and after a sync loss).
+	 * If no frame with a compatible follow-up header starts within the given number of bytes, the
+	 * search gives up. Use this to bound the time spent on files with large amounts of garbage.
+	 * @param maxResyncDistance maximum number of bytes to search, or <code>0</code> for no limit
+	 */
+	public void setMaxResyncDistance(long maxResyncDistance) {
+		if (maxResyncDistance < 0) {
+			throw new IllegalArgumentException("Invalid resync distance: " + maxResyncDistance);
+		}
+		this.maxResyncDistance = maxResyncDistance;
+	}
+
+	/**
+	 * @return size up to which ID3v2 tags (or their frames) are read into memory
+	 */
+	public int getTagBufferSize() {
+		return tagBufferSize;
+	}
+
+	/**
+	 * Set the size up to which an ID3v2 tag is read with a single bulk read and decoded from memory.
+	 * Frames of larger tags are read in bulk if they fit, bigger frames (e.g. pictures) are streamed.
+	 * @param tagBufferSize buffer size (default is {@link ID3v2Info#DEFAULT_BUFFER_SIZE}), or <code>0</code> to stream all frames
+	 */
+	public void setTagBufferSize(int tagBufferSize) {
+		if (tagBufferSize < 0) {
+			throw new IllegalArgumentException("Invalid tag buffer size: " + tagBufferSize);
+		}
+		this.tagBufferSize = tagBufferSize;
+	}
+
+	/**
+	 * @return maximum number of segments scanned in parallel, or <code>0</code> for a sequential scan (default)
+	 */
+	public int getScanSegments() {
+		return scanSegments;
+	}
+
+	/**
+	 * Enable parallel frame scanning. If all frames of a VBR file without Xing/VBRI header have to be scanned,
+	 * the audio region is split into segments, which are scanned in parallel. The result is the same as for
+	 * a sequential scan. Segments are at least 1MB in size. This only applies to files read from a
+	 * <code>Path</code> or <code>FileChannel</code>.
+	 * @param scanSegments maximum number of segments, or <code>0</code> for a sequential scan
+	 */
+	public void setScanSegments(int scanSegments) {
+		if (scanSegments < 0) {
+			throw new IllegalArgumentException("Invalid number of scan segments: " + scanSegments);
+		}
+		this.scanSegments = scanSegments;
+	}
+
+	/**
+	 * @return pool used for parallel scanning or <code>null</code>
+	 */
+	public ForkJoinPool getScanPool() {
+		return scanPool;
+	}
+
+	/**
+	 * @param scanPool pool used for parallel scanning, or <code>null</code> to use a shared default pool
+	 */
+	public void setScanPool(ForkJoinPool scanPool) {
+		this.scanPool = scanPool;
+	}
+
+	/**
+	 * @return number of frames per frame index entry, or <code>0</code> if no index is built (default)
+	 */
+	public int getFrameIndexInterval() {
+		return frameIndexInterval;
+	}
+
+	/**
+	 * Build a frame index (see {@link MP3Info#getFrameIndex()}). This requires all frames to be
+	 * scanned (sequentially), even if the duration could be taken from a tag or VBR header.
+	 * The duration is then calculated exactly from the number of frames.
+	 * @param frameIndexInterval number of frames per index entry (at most {@link MP3FrameIndex#MAX_INTERVAL}),
+	 * or <code>0</code> to disable
+	 */
+	public void setFrameIndexInterval(int frameIndexInterval) {
+		if (frameIndexInterval < 0 || frameIndexInterval > MP3FrameIndex.MAX_INTERVAL) {
+			throw new IllegalArgumentException("Invalid frame index interval: " + frameIndexInterval);
+		}
+		this.frameIndexInterval = frameIndexInterval;
+	}
+
+	/**
+	 * @return <code>true</code> if the audio frames are audited
+	 */
+	public boolean isAudit() {
+		return audit;
+	}
+
+	/**
+	 * Audit the audio frames (see {@link MP3Info#getAudit()}). Like building a frame index, this requires all
+	 * frames to be scanned (sequentially). The CRC of protected Layer III frames is verified and the scan
+	 * resyncs after a sync loss, so the duration includes the frames following a corrupt region.
+	 * @param audit <code>true</code> to audit the audio frames
+	 */
+	public void setAudit(boolean audit) {
+		this.audit = audit;
+	}
+
+	/**
+	 * @return <code>true</code> if a scan resyncs after a sync loss
+	 */
+	public boolean isResync() {
+		return resync;
+	}
+
+	/**
+	 * Resync after a sync loss when scanning the audio frames (implied by {@link #setAudit(boolean)}),
+	 * so the duration includes the frames following a corrupt region. This does not require a scan by itself,
+	 * but frames are then scanned sequentially.
+	 * @param resync <code>true</code> to resync after a sync loss
+	 */
+	public void setResync(boolean resync) {
+		this.resync = resync;
+	}
+
+	/**
+	 * @return registered frame visitors
+	 */
+	public List<MP3FrameVisitor> getFrameVisitors() {
+		return Collections.unmodifiableList(frameVisitors);
+	}
+
+	/**
+	 * Register a frame visitor. Like building a frame index, this requires all frames to be scanned (sequentially).
+	 * All visitors are served by the same pass over the audio, which also calculates the duration.
+	 * @param visitor frame visitor
+	 */
+	public void addFrameVisitor(MP3FrameVisitor visitor) {
+		if (visitor == null) {
+			throw new IllegalArgumentException("Frame visitor must not be null");
+		}
+		frameVisitors.add(visitor);
+	}
+
+	/**
+	 * @param visitor frame visitor to remove
+	 */
+	public void removeFrameVisitor(MP3FrameVisitor visitor) {
+		frameVisitors.remove(visitor);
+	}
+
+	/**
+	 * @return audio digest algorithm or <code>null</code>
+	 */
+	public String getDigestAlgorithm() {
+		return digestAlgorithm;
+	}
+
+	/**
+	 * Calculate a digest of the audio frame bytes (see {@link MP3Info#getAudioDigest()}), e.g. to detect
+	 * duplicates independent of their tags. A Xing/Info/VBRI header frame is not hashed. Unless a digest
+	 * stride is set, this requires all frames to be scanned (sequentially).
+	 * @param digestAlgorithm message digest algorithm (e.g. <code>"SHA-256"</code>), or <code>null</code> to disable
+	 */
+	public void setDigestAlgorithm(String digestAlgorithm) {
+		if (digestAlgorithm != null) {
+			try {
+				MessageDigest.getInstance(digestAlgorithm);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalArgumentException("Unsupported digest algorithm: " + digestAlgorithm, e);
+			}
+		}
+		this.digestAlgorithm = digestAlgorithm;
+	}
+
+	/**
+	 * @return digest window stride or <code>0</code> if all frames are hashed (default)
+	 */
+	public long getDigestStride() {
+		return digestStride;
+	}
+
+	/**
+	 * Hash a sampled subset of the audio frames. Only frames starting within windows of <code>digestWindowSize</code>
+	 * bytes are hashed. The windows are placed every <code>digestStride</code> bytes, starting at the first audio frame.
+	 * The frames between windows are skipped, so this combines with the fast duration strategies.
+	 * Digests are only comparable if calculated with the same stride and window size.
+	 * @param digestStride window stride, or <code>0</code> to hash all frames
+	 */
+	public void setDigestStride(long digestStride) {
+		if (digestStride < 0) {
+			throw new IllegalArgumentException("Invalid digest stride: " + digestStride);
+		}
+		this.digestStride = digestStride;
+	}
+
+	/**
+	 * @return digest window size
+	 */
+	public int getDigestWindowSize() {
+		return digestWindowSize;
+	}
+
+	/**
+	 * @param digestWindowSize digest window size (default is {@link #DEFAULT_DIGEST_WINDOW_SIZE})
+	 */
+	public void setDigestWindowSize(int digestWindowSize) {
+		if (digestWindowSize <= 0) {
+			throw new IllegalArgumentException("Invalid digest window size: " + digestWindowSize);
+		}
+		this.digestWindowSize = digestWindowSize;
+	}
+
+	/**
+	 * Create the message digest.
+	 */
+	MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(digestAlgorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if all frames have to be scanned (sequentially)
+	 */
+	boolean isScanRequired() {
+		return frameIndexInterval > 0 || audit || !frameVisitors.isEmpty() || digestAlgorithm != null && digestStride == 0;
+	}
+}
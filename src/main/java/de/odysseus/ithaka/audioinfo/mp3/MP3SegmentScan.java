@@ -0,0 +1,263 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel frame scan of a memory mapped file.
+ * The remaining audio region is split into segments, which are scanned on a fork/join pool.
+ * Each segment (but the first) resyncs at its start position. When stitching the segments, a segment's
+ * first frame must start where the previous segment's last frame ends. Otherwise, the resync went wrong
+ * (e.g. a false sync inside a frame) and the segment is rescanned from the end of the previous segment.
+ * This makes the result identical to a sequential scan.
+ */
+final class MP3SegmentScan {
+	/**
+	 * Minimum number of bytes per segment.
+	 */
+	static final int MIN_SEGMENT_SIZE = 1 << 20;
+
+	/**
+	 * Scanned segment.
+	 */
+	static class Segment {
+		final long start;
+		final long end;
+
+		long firstPosition = -1; // position of first frame (resync only)
+		MP3Frame firstFrame; // first frame (resync only)
+		MP3Frame lastFrame; // last frame
+		long position; // position after last frame
+
+		int frames;
+		long frameSizeSum;
+		long bitrateSum;
+		int minBitrate;
+		int maxBitrate;
+		boolean broken; // sync lost before end of segment
+
+		Segment(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		private void add(MP3Frame frame) {
+			frames++;
+			frameSizeSum += frame.getSize();
+			int bitrate = frame.getHeader().getBitrate();
+			bitrateSum += bitrate;
+			if (minBitrate == 0 || bitrate < minBitrate) {
+				minBitrate = bitrate;
+			}
+			if (bitrate > maxBitrate) {
+				maxBitrate = bitrate;
+			}
+			lastFrame = frame;
+		}
+
+		/**
+		 * @return <code>true</code> if this segment continues the given previous segment
+		 */
+		boolean continues(Segment previous) {
+			return firstPosition == previous.position && firstFrame.getHeader().isCompatible(previous.lastFrame.getHeader());
+		}
+
+		/**
+		 * @return number of frames
+		 */
+		int getFrames() {
+			return frames;
+		}
+
+		/**
+		 * @return sum of frame sizes
+		 */
+		long getFrameSizeSum() {
+			return frameSizeSum;
+		}
+
+		/**
+		 * @return sum of frame bitrates
+		 */
+		long getBitrateSum() {
+			return bitrateSum;
+		}
+
+		/**
+		 * @return minimum frame bitrate or <code>0</code> if there are no frames
+		 */
+		int getMinBitrate() {
+			return minBitrate;
+		}
+
+		/**
+		 * @return maximum frame bitrate or <code>0</code> if there are no frames
+		 */
+		int getMaxBitrate() {
+			return maxBitrate;
+		}
+	}
+
+	/**
+	 * Unchecked wrapper for I/O errors in scan tasks.
+	 */
+	private static class ScanException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ScanException(IOException cause) {
+			super(cause);
+		}
+
+		IOException getIOException() {
+			return (IOException)getCause();
+		}
+	}
+
+	/**
+	 * Pool used if no pool is given, created on first use.
+	 */
+	private static class SharedPool {
+		static final ForkJoinPool INSTANCE = new ForkJoinPool();
+	}
+
+	private static class ScanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final MP3BufferInput input;
+		private final Segment[] segments;
+		private final MP3Frame previousFrame;
+		private final int from;
+		private final int to;
+
+		ScanTask(MP3BufferInput input, Segment[] segments, MP3Frame previousFrame, int from, int to) {
+			this.input = input;
+			this.segments = segments;
+			this.previousFrame = previousFrame;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ScanTask(input, segments, previousFrame, from, middle), new ScanTask(input, segments, previousFrame, middle, to));
+			} else {
+				try {
+					scan(new MP3BufferInput(input), segments[from], from == 0 ? previousFrame : null);
+				} catch (IOException e) {
+					throw new ScanException(e);
+				}
+			}
+		}
+	}
+
+	private MP3SegmentScan() {
+	}
+
+	/**
+	 * Scan a segment. If a previous frame is given, the segment starts with the frame following the previous
+	 * frame at the segment start. Otherwise, we resync at the segment start. Frames are added while they start
+	 * before the segment's end.
+	 */
+	static void scan(MP3BufferInput input, Segment segment, MP3Frame previousFrame) throws IOException {
+		input.seek(segment.start);
+		MP3Frame frame = previousFrame;
+		if (frame == null) {
+			frame = input.readFirstFrame();
+			if (frame == null) {
+				segment.broken = true;
+				return;
+			}
+			segment.firstFrame = frame;
+			segment.firstPosition = input.getPosition() - frame.getSize();
+			segment.add(frame);
+		}
+		while (input.getPosition() < segment.end) {
+			frame = input.readNextFrame(frame);
+			if (frame == null) {
+				segment.broken = true;
+				break;
+			}
+			segment.add(frame);
+		}
+		segment.position = input.getPosition();
+	}
+
+	/**
+	 * Scan the frames following the given previous frame up to the end of the file or until sync is lost.
+	 * @param input input, positioned after the previous frame
+	 * @param previousFrame previous frame
+	 * @param segments maximum number of segments
+	 * @param pool fork/join pool or <code>null</code> to use a shared pool
+	 * @return scan result
+	 * @throws IOException
+	 */
+	static Segment scan(MP3BufferInput input, MP3Frame previousFrame, int segments, ForkJoinPool pool) throws IOException {
+		long start = input.getPosition();
+		long length = input.getEndPosition() - start;
+		int count = (int)Math.max(1, Math.min(segments, length / MIN_SEGMENT_SIZE));
+
+		Segment[] parts = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			parts[i] = new Segment(start + length * i / count, i == count - 1 ? Long.MAX_VALUE : start + length * (i + 1) / count);
+		}
+		if (count == 1) {
+			scan(input, parts[0], previousFrame);
+			return parts[0];
+		}
+
+		try {
+			(pool != null ? pool : SharedPool.INSTANCE).invoke(new ScanTask(input, parts, previousFrame, 0, count));
+		} catch (RuntimeException e) {
+			// exceptions thrown in other workers may be wrapped again when rethrown by invoke()
+			for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+				if (cause instanceof ScanException) {
+					throw ((ScanException)cause).getIOException();
+				}
+			}
+			throw e;
+		}
+
+		/*
+		 * stitch segments
+		 */
+		Segment result = parts[0];
+		for (int i = 1; i < count && !result.broken; i++) {
+			Segment part = parts[i];
+			if (part.firstFrame == null || !part.continues(result)) { // rescan from end of previous segment
+				part = new Segment(result.position, part.end);
+				scan(input, part, result.lastFrame);
+			}
+			result.frames += part.frames;
+			result.frameSizeSum += part.frameSizeSum;
+			result.bitrateSum += part.bitrateSum;
+			if (part.frames > 0) {
+				result.minBitrate = result.minBitrate == 0 ? part.minBitrate : Math.min(result.minBitrate, part.minBitrate);
+				result.maxBitrate = Math.max(result.maxBitrate, part.maxBitrate);
+			}
+			result.broken = part.broken;
+			result.position = part.position;
+			if (part.lastFrame != null) {
+				result.lastFrame = part.lastFrame;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Frame sync search.
+ * A sync candidate is a <code>0xFF</code> byte followed by a byte with its upper three bits set
+ * (i.e. the first 11 bits of a frame header). Buffers are scanned eight bytes at a time using
+ * SWAR ("SIMD within a register") bit tricks on <code>long</code> values.
+ */
+final class MP3Sync {
+	private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+	private static final long HIGH = 0x8080808080808080L;
+	private static final long TOP3 = 0xE0E0E0E0E0E0E0E0L;
+
+	/**
+	 * High bits of the first seven bytes (the last byte's successor is not contained in the word).
+	 */
+	private static final long FIRST7 = 0x8080808080808000L;
+
+	private MP3Sync() {
+	}
+
+	/**
+	 * Answer candidate mask: the high bit of byte <code>i</code> (counted from the most significant byte)
+	 * is set if byte <code>i</code> is <code>0xFF</code> and byte <code>i + 1</code> has its upper three
+	 * bits set.
+	 */
+	private static long candidates(long word) {
+		/*
+		 * 0xFF bytes: zero bytes of ~word (exact, no false positives)
+		 */
+		long x = ~word;
+		long ff = ~(((x & LOW7) + LOW7) | x | LOW7);
+		/*
+		 * successor bytes with upper three bits set: shift successors into place, then
+		 * collect the missing upper bits of each byte into its high bit.
+		 */
+		long z = ~(word << 8) & TOP3;
+		long incomplete = (z | z << 1 | z << 2) & HIGH;
+		return ff & ~incomplete & FIRST7;
+	}
+
+	private static boolean isCandidate(int b0, int b1) {
+		return b0 == 0xFF && (b1 & 0xE0) == 0xE0;
+	}
+
+	/**
+	 * Find the next sync candidate in the given buffer range. Both candidate bytes must be located
+	 * in the range, i.e. the answered index is less than <code>to - 1</code>.
+	 * The buffer's position and limit are not changed.
+	 * @param buffer buffer
+	 * @param from start index (inclusive)
+	 * @param to end index (exclusive)
+	 * @return index of first candidate or <code>-1</code>
+	 */
+	static int find(ByteBuffer buffer, int from, int to) {
+		boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+		int index = from;
+		while (index + 8 <= to) {
+			long word = buffer.getLong(index);
+			if (!bigEndian) {
+				word = Long.reverseBytes(word);
+			}
+			long mask = candidates(word);
+			if (mask != 0) {
+				return index + (Long.numberOfLeadingZeros(mask) >>> 3);
+			}
+			index += 7; // the last byte may start a candidate with the following byte
+		}
+		while (index + 1 < to) {
+			if (isCandidate(buffer.get(index) & 0xFF, buffer.get(index + 1) & 0xFF)) {
+				return index;
+			}
+			index++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Find the next sync candidate in the given array range.
+	 * @param bytes data
+	 * @param from start index (inclusive)
+	 * @param to end index (exclusive)
+	 * @return index of first candidate or <code>-1</code>
+	 * @see #find(ByteBuffer, int, int)
+	 */
+	static int find(byte[] bytes, int from, int to) {
+		return find(ByteBuffer.wrap(bytes), from, to);
+	}
+}
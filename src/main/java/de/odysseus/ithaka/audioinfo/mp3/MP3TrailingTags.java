@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import de.odysseus.ithaka.audioinfo.util.RandomAccessSource;
+
+/**
+ * Detection of APE and Lyrics3 tags between the audio frames and an (optional) ID3v1 tag.
+ */
+final class MP3TrailingTags {
+	private static final int APE_FOOTER_SIZE = 32;
+	private static final int LYRICS3_V1_MAX_SIZE = 5100 + 11 + 9; // lyrics + "LYRICSBEGIN" + "LYRICSEND"
+
+	private MP3TrailingTags() {
+	}
+
+	private static ByteBuffer read(RandomAccessSource source, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		if (source.read(position, buffer) < length) {
+			return null;
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static String ascii(ByteBuffer buffer, int index, int length) {
+		return new String(buffer.array(), buffer.arrayOffset() + index, length, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @param trailer last 32 bytes before the given end
+	 * @return start position of an APE tag ending at the given position or <code>-1</code>
+	 */
+	private static long apeStart(ByteBuffer trailer, long end) {
+		if (!"APETAGEX".equals(ascii(trailer, 0, 8))) {
+			return -1;
+		}
+		trailer.order(ByteOrder.LITTLE_ENDIAN);
+		long size = trailer.getInt(12) & 0xFFFFFFFFL; // tag size, including footer, excluding header
+		if ((trailer.getInt(20) & 0x80000000) != 0) { // tag contains a header
+			size += APE_FOOTER_SIZE;
+		}
+		return size >= APE_FOOTER_SIZE && size <= end ? end - size : -1;
+	}
+
+	/**
+	 * @param trailer last 32 bytes before the given end
+	 * @return start position of a Lyrics3 (v1 or v2) tag ending at the given position or <code>-1</code>
+	 */
+	private static long lyrics3Start(RandomAccessSource source, ByteBuffer trailer, long end) throws IOException {
+		if ("LYRICS200".equals(ascii(trailer, APE_FOOTER_SIZE - 9, 9))) { // v2: 6 digit size + "LYRICS200"
+			long size;
+			try {
+				size = Long.parseLong(ascii(trailer, APE_FOOTER_SIZE - 15, 6)) + 15;
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+			if (size > end) {
+				return -1;
+			}
+			ByteBuffer begin = read(source, end - size, 11);
+			return begin != null && "LYRICSBEGIN".equals(ascii(begin, 0, 11)) ? end - size : -1;
+		}
+		if ("LYRICSEND".equals(ascii(trailer, APE_FOOTER_SIZE - 9, 9))) { // v1: search "LYRICSBEGIN"
+			int length = (int)Math.min(end, LYRICS3_V1_MAX_SIZE);
+			ByteBuffer tag = read(source, end - length, length);
+			if (tag != null) {
+				int index = ascii(tag, 0, length).lastIndexOf("LYRICSBEGIN");
+				if (index >= 0) {
+					return end - length + index;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Answer the end of the audio region, i.e. the start of APE and Lyrics3 tags preceding the given end position.
+	 * @param source source
+	 * @param end end position (file length or start of ID3v1 tag)
+	 * @return audio end position
+	 * @throws IOException
+	 */
+	static long audioEnd(RandomAccessSource source, long end) throws IOException {
+		while (end >= APE_FOOTER_SIZE) {
+			ByteBuffer trailer = read(source, end - APE_FOOTER_SIZE, APE_FOOTER_SIZE);
+			if (trailer == null) {
+				break;
+			}
+			long start = apeStart(trailer, end);
+			if (start < 0) {
+				start = lyrics3Start(source, trailer, end);
+			}
+			if (start < 0) {
+				break;
+			}
+			end = start;
+		}
+		return end;
+	}
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * VBR header (Xing/Info with optional LAME extension, or VBRI), located in the first audio frame.
+ * Values which are not present in the header are reported as <code>-1</code> (or <code>null</code>).
+ */
+public class MP3VBRHeader {
+	public enum Type {
+		XING, // Xing header (VBR)
+		INFO, // Xing header written for a CBR file
+		VBRI  // Fraunhofer VBRI header
+	}
+
+	private static final int XING_FLAG_FRAMES = 0x01;
+	private static final int XING_FLAG_BYTES = 0x02;
+	private static final int XING_FLAG_TOC = 0x04;
+	private static final int XING_FLAG_QUALITY = 0x08;
+
+	/**
+	 * Read VBR header from the given frame.
+	 * @param frame first audio frame (must carry its bytes)
+	 * @return VBR header or <code>null</code> if the frame is not a Xing/Info/VBRI frame
+	 */
+	static MP3VBRHeader read(MP3Frame frame) {
+		if (frame.isXingFrame()) {
+			return new MP3VBRHeader(frame.getHeader(), frame.getBytes(), frame.getHeader().getXingOffset(), true);
+		} else if (frame.isVBRIFrame()) {
+			return new MP3VBRHeader(frame.getHeader(), frame.getBytes(), frame.getHeader().getVBRIOffset(), false);
+		}
+		return null;
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return  ((bytes[offset]     & 0xFF) << 24) |
+				((bytes[offset + 1] & 0xFF) << 16) |
+				((bytes[offset + 2] & 0xFF) << 8)  |
+				( bytes[offset + 3] & 0xFF);
+	}
+
+	private static int readShort(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+	}
+
+	/*
+	 * CRC-16 as used by LAME (polynomial 0x8005, reflected, initial value 0).
+	 */
+	private static int lameCRC(byte[] bytes, int length) {
+		int crc = 0;
+		for (int i = 0; i < length; i++) {
+			crc ^= bytes[i] & 0xFF;
+			for (int bit = 0; bit < 8; bit++) {
+				crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+			}
+		}
+		return crc;
+	}
+
+	private final MP3Frame.Header header;
+	private final Type type;
+
+	private int frames = -1;
+	private long bytes = -1;
+	private int[] toc;
+	private int quality = -1;
+
+	/*
+	 * VBRI seek table: byte offsets of the table entries (relative to the first frame) and
+	 * number of frames per table entry.
+	 */
+	private long[] vbriOffsets;
+	private int vbriFramesPerEntry;
+
+	/*
+	 * LAME extension
+	 */
+	private String encoder;
+	private int encoderDelay = -1;
+	private int encoderPadding = -1;
+	private long musicLength = -1;
+	private int musicCRC = -1;
+
+	private MP3VBRHeader(MP3Frame.Header header, byte[] data, int offset, boolean xing) {
+		this.header = header;
+		if (xing) {
+			type = data[offset] == 'I' ? Type.INFO : Type.XING;
+			parseXing(data, offset);
+		} else {
+			type = Type.VBRI;
+			parseVBRI(data, offset);
+		}
+	}
+
+	private void parseXing(byte[] data, int offset) {
+		int flags = readInt(data, offset + 4);
+		int index = offset + 8;
+		if ((flags & XING_FLAG_FRAMES) != 0) {
+			if (index + 4 > data.length) {
+				return;
+			}
+			frames = readInt(data, index);
+			index += 4;
+		}
+		if ((flags & XING_FLAG_BYTES) != 0) {
+			if (index + 4 > data.length) {
+				return;
+			}
+			bytes = readInt(data, index) & 0xFFFFFFFFL;
+			index += 4;
+		}
+		if ((flags & XING_FLAG_TOC) != 0) {
+			if (index + 100 > data.length) {
+				return;
+			}
+			toc = new int[100];
+			for (int i = 0; i < 100; i++) {
+				toc[i] = data[index + i] & 0xFF;
+			}
+			index += 100;
+		}
+		if ((flags & XING_FLAG_QUALITY) != 0) {
+			if (index + 4 > data.length) {
+				return;
+			}
+			quality = readInt(data, index);
+			index += 4;
+		}
+		if (index + 9 <= data.length) {
+			parseLAME(data, index);
+		}
+	}
+
+	private void parseLAME(byte[] data, int offset) {
+		int length = 0;
+		while (length < 9 && data[offset + length] >= 0x20 && data[offset + length] < 0x7F) {
+			length++;
+		}
+		String encoder = new String(data, offset, length, StandardCharsets.ISO_8859_1).trim();
+		if (!encoder.startsWith("LAME") && !encoder.startsWith("Lavf") && !encoder.startsWith("Lavc")) {
+			return;
+		}
+		this.encoder = encoder;
+		if (offset + 36 > data.length || lameCRC(data, offset + 34) != readShort(data, offset + 34)) {
+			return; // no valid LAME tag (e.g. LAME < 3.90)
+		}
+		encoderDelay = ((data[offset + 21] & 0xFF) << 4) | ((data[offset + 22] & 0xFF) >> 4);
+		encoderPadding = ((data[offset + 22] & 0x0F) << 8) | (data[offset + 23] & 0xFF);
+		musicLength = readInt(data, offset + 28) & 0xFFFFFFFFL;
+		musicCRC = readShort(data, offset + 32);
+	}
+
+	private void parseVBRI(byte[] data, int offset) {
+		quality = readShort(data, offset + 8);
+		bytes = readInt(data, offset + 10) & 0xFFFFFFFFL;
+		frames = readInt(data, offset + 14);
+		int entries = readShort(data, offset + 18);
+		int scale = readShort(data, offset + 20);
+		int entrySize = readShort(data, offset + 22);
+		int index = offset + 26;
+		if (entrySize < 1 || entrySize > 4 || index + entries * entrySize > data.length) {
+			return;
+		}
+		vbriFramesPerEntry = readShort(data, offset + 24);
+		vbriOffsets = new long[entries + 1];
+		for (int i = 0; i < entries; i++) {
+			long value = 0;
+			for (int j = 0; j < entrySize; j++) {
+				value = (value << 8) | (data[index++] & 0xFF);
+			}
+			vbriOffsets[i + 1] = vbriOffsets[i] + value * scale;
+		}
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return number of frames or <code>-1</code>
+	 */
+	public int getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return number of audio bytes (including the VBR header frame) or <code>-1</code>
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return Xing table of contents (100 entries) or <code>null</code>
+	 */
+	public int[] getToc() {
+		return toc;
+	}
+
+	/**
+	 * @return quality indicator or <code>-1</code>
+	 */
+	public int getQuality() {
+		return quality;
+	}
+
+	/**
+	 * @return encoder string from LAME extension (e.g. <code>"LAME3.99r"</code>) or <code>null</code>
+	 */
+	public String getEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * @return encoder delay (samples) from LAME extension or <code>-1</code>
+	 */
+	public int getEncoderDelay() {
+		return encoderDelay;
+	}
+
+	/**
+	 * @return encoder padding (samples) from LAME extension or <code>-1</code>
+	 */
+	public int getEncoderPadding() {
+		return encoderPadding;
+	}
+
+	/**
+	 * @return music length (bytes) from LAME extension or <code>-1</code>
+	 */
+	public long getMusicLength() {
+		return musicLength;
+	}
+
+	/**
+	 * @return music CRC from LAME extension or <code>-1</code>
+	 */
+	public int getMusicCRC() {
+		return musicCRC;
+	}
+
+	/**
+	 * @return total number of samples (per channel) or <code>-1</code>
+	 */
+	public long getTotalSamples() {
+		return frames < 0 ? -1 : (long)frames * header.getSampleCount();
+	}
+
+	/**
+	 * @return number of samples (per channel) without encoder delay and padding or <code>-1</code>
+	 */
+	public long getGaplessSamples() {
+		if (frames < 0) {
+			return -1;
+		}
+		long samples = getTotalSamples();
+		if (encoderDelay > 0) {
+			samples -= encoderDelay;
+		}
+		if (encoderPadding > 0) {
+			samples -= encoderPadding;
+		}
+		return Math.max(0, samples);
+	}
+
+	/**
+	 * @return duration (milliseconds) without encoder delay and padding or <code>-1</code>
+	 */
+	public long getGaplessDuration() {
+		long samples = getGaplessSamples();
+		return samples < 0 ? -1 : 1000L * samples / header.getFrequency();
+	}
+
+	/**
+	 * Map a time to a byte offset using the Xing table of contents or the VBRI seek table.
+	 * @param millis time (milliseconds)
+	 * @return offset (bytes), relative to the start of the VBR header frame, or <code>-1</code>
+	 */
+	public long getSeekOffset(long millis) {
+		if (frames <= 0 || bytes <= 0) {
+			return -1;
+		}
+		long totalMillis = 1000L * getTotalSamples() / header.getFrequency();
+		if (toc != null) {
+			double percent = Math.max(0, Math.min(100, 100.0 * millis / totalMillis));
+			int index = Math.min(99, (int)percent);
+			double lower = toc[index];
+			double upper = index < 99 ? toc[index + 1] : 256;
+			double scaled = lower + (upper - lower) * (percent - index);
+			return (long)(scaled / 256 * bytes);
+		} else if (vbriOffsets != null && vbriFramesPerEntry > 0) {
+			double entry = (double)millis * header.getFrequency() / (1000L * vbriFramesPerEntry * header.getSampleCount());
+			int index = (int)Math.max(0, Math.min(vbriOffsets.length - 1, entry));
+			if (index == vbriOffsets.length - 1) {
+				return vbriOffsets[index];
+			}
+			return vbriOffsets[index] + (long)((vbriOffsets[index + 1] - vbriOffsets[index]) * (entry - index));
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[type=%s, frames=%d, bytes=%d, encoder=%s]", getClass().getSimpleName(), type, frames, bytes, encoder);
+	}
+}
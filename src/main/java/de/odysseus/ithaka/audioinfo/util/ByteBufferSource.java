@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Random access source reading from a byte buffer or array. Ranges are answered as views, i.e. without copying.
+ * The buffer's position and limit are not changed.
+ */
+public class ByteBufferSource implements RandomAccessSource {
+	private final ByteBuffer buffer;
+
+	/**
+	 * Create source reading the buffer's remaining bytes.
+	 * @param buffer buffer
+	 */
+	public ByteBufferSource(ByteBuffer buffer) {
+		this.buffer = buffer.slice();
+	}
+
+	public ByteBufferSource(byte[] bytes) {
+		this(ByteBuffer.wrap(bytes));
+	}
+
+	@Override
+	public long length() {
+		return buffer.limit();
+	}
+
+	@Override
+	public int read(long position, ByteBuffer buffer) {
+		if (position >= this.buffer.limit()) {
+			return -1;
+		}
+		int count = (int)Math.min(buffer.remaining(), this.buffer.limit() - position);
+		buffer.put(map(position, count));
+		return count;
+	}
+
+	@Override
+	public ByteBuffer map(long position, int length) {
+		ByteBuffer result = buffer.asReadOnlyBuffer();
+		result.limit((int)position + length);
+		result.position((int)position);
+		return result.slice();
+	}
+}
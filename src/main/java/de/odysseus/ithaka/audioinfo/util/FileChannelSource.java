@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access source reading from a file channel. Ranges are memory mapped.
+ * The channel's position is not used. The channel is owned by the caller, which closes it
+ * when the source and its mapped buffers are no longer used; the source never closes it.
+ */
+public class FileChannelSource implements RandomAccessSource {
+	private final FileChannel channel;
+
+	public FileChannelSource(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public long length() throws IOException {
+		return channel.size();
+	}
+
+	@Override
+	public int read(long position, ByteBuffer buffer) throws IOException {
+		int total = 0;
+		while (buffer.hasRemaining()) {
+			int count = channel.read(buffer, position + total);
+			if (count < 0) {
+				return total == 0 ? -1 : total;
+			}
+			total += count;
+		}
+		return total;
+	}
+
+	@Override
+	public ByteBuffer map(long position, int length) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+	}
+}
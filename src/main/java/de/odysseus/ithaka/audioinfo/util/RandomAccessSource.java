@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Random access data source, providing positioned reads.
+ * Implementations must support concurrent calls from multiple threads.
+ * A source doesn't own the underlying resource (e.g. a file channel): whoever opened the resource
+ * closes it, and must keep it open while the source and the buffers answered by {@link #map(long, int)}
+ * are in use.
+ */
+public interface RandomAccessSource {
+	/**
+	 * @return number of bytes
+	 * @throws IOException
+	 */
+	public long length() throws IOException;
+
+	/**
+	 * Read bytes starting at the given position until the buffer is full or the end of the source is reached.
+	 * @param position source position
+	 * @param buffer destination buffer
+	 * @return number of bytes read or <code>-1</code> if the position is at or beyond the end of the source
+	 * @throws IOException
+	 */
+	public int read(long position, ByteBuffer buffer) throws IOException;
+
+	/**
+	 * Answer a read-only buffer view of the given range, with position <code>0</code> and limit <code>length</code>.
+	 * This is used to scan audio frames in large ranges, so implementations should avoid copying,
+	 * e.g. by memory mapping. The buffer is only valid while the underlying resource is open.
+	 * @param position start position
+	 * @param length range length (the range must be within the source)
+	 * @return buffer
+	 * @throws IOException
+	 */
+	public ByteBuffer map(long position, int length) throws IOException;
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Text decoding for tag strings. Byte order marks and zero terminators are handled on the raw bytes.
+ * Most tag text is pure ASCII, which is detected with a quick scan and decoded without charset lookup.
+ * Other UTF-16 text is decoded by per-thread decoders.
+ */
+public final class TextDecoder {
+	private static final class Decoders {
+		final CharsetDecoder utf16be = decoder(StandardCharsets.UTF_16BE);
+		final CharsetDecoder utf16le = decoder(StandardCharsets.UTF_16LE);
+
+		private static CharsetDecoder decoder(Charset charset) {
+			return charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+	}
+
+	/*
+	 * Charset decoders are stateful, so keep them in a thread local variable.
+	 */
+	private static final ThreadLocal<Decoders> decoders = new ThreadLocal<Decoders>() {
+		@Override
+		protected Decoders initialValue() {
+			return new Decoders();
+		}
+	};
+
+	private TextDecoder() {
+	}
+
+	private static boolean isUTF16(Charset charset) {
+		return StandardCharsets.UTF_16.equals(charset) || StandardCharsets.UTF_16BE.equals(charset) || StandardCharsets.UTF_16LE.equals(charset);
+	}
+
+	private static boolean isASCII(byte[] bytes, int offset, int length) {
+		for (int i = offset, end = offset + length; i < end; i++) {
+			if (bytes[i] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isASCII(byte[] bytes, int offset, int length, boolean bigEndian) {
+		if (length % 2 != 0) {
+			return false;
+		}
+		int high = bigEndian ? offset : offset + 1;
+		int low = bigEndian ? offset + 1 : offset;
+		for (int i = 0; i < length; i += 2) {
+			if (bytes[high + i] != 0 || bytes[low + i] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Answer the length of the text up to its zero terminator, i.e. up to the first zero byte
+	 * or, for UTF-16, the first zero byte pair at an even index.
+	 * @param bytes buffer
+	 * @param offset text offset
+	 * @param length maximum text length
+	 * @param charset text charset
+	 * @return text length (not including the terminator)
+	 */
+	public static int terminatedLength(byte[] bytes, int offset, int length, Charset charset) {
+		if (isUTF16(charset)) {
+			for (int i = 0; i + 1 < length; i += 2) {
+				if (bytes[offset + i] == 0 && bytes[offset + i + 1] == 0) {
+					return i;
+				}
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				if (bytes[offset + i] == 0) {
+					return i;
+				}
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Decode text up to its zero terminator (see {@link #terminatedLength(byte[], int, int, Charset)}),
+	 * removing a leading byte order mark.
+	 * @param bytes buffer
+	 * @param offset text offset
+	 * @param length maximum text length
+	 * @param charset text charset
+	 * @return text
+	 */
+	public static String decodeTerminated(byte[] bytes, int offset, int length, Charset charset) {
+		return decode(bytes, offset, terminatedLength(bytes, offset, length, charset), charset);
+	}
+
+	/**
+	 * Decode text, removing a leading byte order mark. For {@link StandardCharsets#UTF_16},
+	 * the byte order mark determines the byte order (default is big endian).
+	 * @param bytes buffer
+	 * @param offset text offset
+	 * @param length text length
+	 * @param charset text charset
+	 * @return text
+	 */
+	public static String decode(byte[] bytes, int offset, int length, Charset charset) {
+		if (isUTF16(charset)) {
+			boolean bigEndian = !StandardCharsets.UTF_16LE.equals(charset);
+			if (length >= 2) {
+				int b0 = bytes[offset] & 0xFF;
+				int b1 = bytes[offset + 1] & 0xFF;
+				if (b0 == 0xFE && b1 == 0xFF && bigEndian) {
+					offset += 2;
+					length -= 2;
+				} else if (b0 == 0xFF && b1 == 0xFE && !StandardCharsets.UTF_16BE.equals(charset)) {
+					bigEndian = false;
+					offset += 2;
+					length -= 2;
+				}
+			}
+			return decodeUTF16(bytes, offset, length, bigEndian);
+		}
+		boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+		if (utf8 && length >= 3 && bytes[offset] == (byte)0xEF && bytes[offset + 1] == (byte)0xBB && bytes[offset + 2] == (byte)0xBF) {
+			offset += 3;
+			length -= 3;
+		}
+		if (StandardCharsets.ISO_8859_1.equals(charset) || (utf8 || StandardCharsets.US_ASCII.equals(charset)) && isASCII(bytes, offset, length)) {
+			return new String(bytes, offset, length, StandardCharsets.ISO_8859_1); // plain copy
+		}
+		return new String(bytes, offset, length, charset);
+	}
+
+	private static String decodeUTF16(byte[] bytes, int offset, int length, boolean bigEndian) {
+		if (isASCII(bytes, offset, length, bigEndian)) {
+			char[] chars = new char[length / 2];
+			int low = bigEndian ? offset + 1 : offset;
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = (char)bytes[low + 2 * i];
+			}
+			return new String(chars);
+		}
+		Decoders decoders = TextDecoder.decoders.get();
+		CharsetDecoder decoder = bigEndian ? decoders.utf16be : decoders.utf16le;
+		try {
+			return decoder.reset().decode(ByteBuffer.wrap(bytes, offset, length)).toString();
+		} catch (CharacterCodingException e) { // cannot happen, errors are replaced
+			throw new IllegalStateException(e);
+		}
+	}
+}
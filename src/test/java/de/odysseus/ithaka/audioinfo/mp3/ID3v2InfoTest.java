@@ -15,13 +15,26 @@
  */
 package de.odysseus.ithaka.audioinfo.mp3;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.logging.Level;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import de.odysseus.ithaka.audioinfo.mp3.ID3v2Info;
+import de.odysseus.ithaka.audioinfo.util.PositionInputStream;
 
 public class ID3v2InfoTest {
 	@Test
@@ -238,4 +251,291 @@ public class ID3v2InfoTest {
 			Assert.assertNull(info.getLyrics());
 		}
 	}
+
+	/*
+	 * Create ID3v2.3 tag with text frames, the given number of TXXX frames and a picture.
+	 */
+	static byte[] createTag(int userTextFrames, int pictureSize) throws IOException {
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		writeFrame(frames, "TIT2", ("\0Title").getBytes(StandardCharsets.ISO_8859_1));
+		byte[] artist = ("\uFEFFArtist").getBytes(StandardCharsets.UTF_16LE);
+		byte[] tpe1 = new byte[1 + artist.length];
+		tpe1[0] = 1; // UTF-16 with BOM
+		System.arraycopy(artist, 0, tpe1, 1, artist.length);
+		writeFrame(frames, "TPE1", tpe1);
+		writeFrame(frames, "COMM", ("\0engDescription\0Comment").getBytes(StandardCharsets.ISO_8859_1));
+		for (int i = 0; i < userTextFrames; i++) {
+			writeFrame(frames, "TXXX", ("\0Key" + i + "\0Value" + i).getBytes(StandardCharsets.ISO_8859_1));
+		}
+		byte[] picture = ("\0image/jpeg\0\u0003Cover\0").getBytes(StandardCharsets.ISO_8859_1);
+		byte[] apic = Arrays.copyOf(picture, picture.length + pictureSize);
+		for (int i = picture.length; i < apic.length; i++) {
+			apic[i] = (byte)i;
+		}
+		writeFrame(frames, "APIC", apic);
+		writeFrame(frames, "TALB", ("\0Album").getBytes(StandardCharsets.ISO_8859_1));
+		frames.write(new byte[64], 0, 64); // padding
+		int size = frames.size();
+		ByteArrayOutputStream tag = new ByteArrayOutputStream();
+		tag.write(new byte[]{ 'I', 'D', '3', 3, 0, 0, (byte)(size >> 21 & 0x7F), (byte)(size >> 14 & 0x7F), (byte)(size >> 7 & 0x7F), (byte)(size & 0x7F) });
+		frames.writeTo(tag);
+		return tag.toByteArray();
+	}
+
+	private static void writeFrame(ByteArrayOutputStream output, String id, byte[] body) throws IOException {
+		output.write(id.getBytes(StandardCharsets.ISO_8859_1));
+		output.write(new byte[]{ (byte)(body.length >> 24), (byte)(body.length >> 16), (byte)(body.length >> 8), (byte)body.length, 0, 0 });
+		output.write(body);
+	}
+
+	private void check(ID3v2Info expected, ID3v2Info actual) {
+		Assert.assertEquals(expected.getVersion(), actual.getVersion());
+		Assert.assertEquals(expected.getTitle(), actual.getTitle());
+		Assert.assertEquals(expected.getArtist(), actual.getArtist());
+		Assert.assertEquals(expected.getAlbum(), actual.getAlbum());
+		Assert.assertEquals(expected.getComment(), actual.getComment());
+		Assert.assertEquals(expected.getYear(), actual.getYear());
+		Assert.assertEquals(expected.getTrack(), actual.getTrack());
+		Assert.assertEquals(expected.getGenre(), actual.getGenre());
+		Assert.assertEquals(expected.getLyrics(), actual.getLyrics());
+		Assert.assertArrayEquals(expected.getCover(), actual.getCover());
+	}
+
+	@Test
+	public void testBufferSize() throws Exception {
+		int[][] tags = { { 10, 512 }, { 1000, 32 * 1024 }, { 1000, 5 * 1024 * 1024 } }; // ~1KB, ~64KB, ~5MB
+		for (int[] tag : tags) {
+			byte[] bytes = createTag(tag[0], tag[1]);
+			bytes = Arrays.copyOf(bytes, bytes.length + 1); // trailing byte must not be consumed
+			ID3v2Info streamed = null;
+			for (int bufferSize : new int[]{ 0, 1024, ID3v2Info.DEFAULT_BUFFER_SIZE, Integer.MAX_VALUE }) {
+				PositionInputStream input = new PositionInputStream(new ByteArrayInputStream(bytes));
+				ID3v2Info info = new ID3v2Info(input, Level.FINEST, bufferSize);
+				Assert.assertEquals(bytes.length - 1, input.getPosition());
+				Assert.assertEquals("Title", info.getTitle());
+				Assert.assertEquals("Artist", info.getArtist());
+				Assert.assertEquals("Album", info.getAlbum());
+				Assert.assertEquals("Comment", info.getComment());
+				Assert.assertEquals(tag[1], info.getCover().length);
+				if (streamed == null) {
+					streamed = info;
+				} else {
+					check(streamed, info);
+				}
+			}
+		}
+		for (String asset : new String[]{ "sample", "id3v22", "id3v23", "id3v23_image", "id3v23_image_utf16le", "id3v23_unicode", "id3v24" }) {
+			byte[] bytes = Files.readAllBytes(new File(getClass().getResource("/sample-assets/" + asset + ".mp3").toURI()).toPath());
+			ID3v2Info streamed = new ID3v2Info(new ByteArrayInputStream(bytes), Level.FINEST, 0);
+			check(streamed, new ID3v2Info(new ByteArrayInputStream(bytes), Level.FINEST, 1024));
+			check(streamed, new ID3v2Info(new ByteArrayInputStream(bytes), Level.FINEST, Integer.MAX_VALUE));
+		}
+	}
+
+	@Test
+	public void testFrameId() throws Exception {
+		int txxx = 'T' << 24 | 'X' << 16 | 'X' << 8 | 'X';
+		Assert.assertEquals(ID3v2FrameId.TIT2, ID3v2FrameId.decode('T' << 16 | 'T' << 8 | '2'));
+		Assert.assertEquals(ID3v2FrameId.APIC, ID3v2FrameId.decode('P' << 16 | 'I' << 8 | 'C'));
+		Assert.assertEquals(txxx, ID3v2FrameId.decode(txxx));
+		Assert.assertEquals("TIT2", ID3v2FrameId.toString(ID3v2FrameId.TIT2, 4));
+		Assert.assertEquals("TT2", ID3v2FrameId.toString('T' << 16 | 'T' << 8 | '2', 3));
+		Assert.assertTrue(ID3v2FrameId.isValid(ID3v2FrameId.TIT2, 4));
+		Assert.assertFalse(ID3v2FrameId.isValid('T' << 24 | 'i' << 16 | 'T' << 8 | '2', 4));
+	}
+
+	/**
+	 * Apply unsynchronisation, i.e. insert <code>0x00</code> after <code>0xFF</code> if followed by
+	 * <code>0x00</code> or <code>%111xxxxx</code>, or at the end.
+	 */
+	private static byte[] unsynchronize(byte[] bytes, int offset) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		output.write(bytes, 0, offset);
+		for (int i = offset; i < bytes.length; i++) {
+			output.write(bytes[i]);
+			if (bytes[i] == (byte)0xFF && (i + 1 == bytes.length || bytes[i + 1] == 0 || (bytes[i + 1] & 0xE0) == 0xE0)) {
+				output.write(0);
+			}
+		}
+		return output.toByteArray();
+	}
+
+	private static byte[] syncsafe(int size) {
+		return new byte[]{ (byte)(size >> 21 & 0x7F), (byte)(size >> 14 & 0x7F), (byte)(size >> 7 & 0x7F), (byte)(size & 0x7F) };
+	}
+
+	@Test
+	public void testUnsynchronization() throws Exception {
+		byte[] plain = createTag(10, 256 * 1024);
+		byte[] bytes = unsynchronize(plain, 10);
+		Assert.assertTrue(bytes.length > plain.length);
+		bytes[5] = (byte)0x80; // unsynchronisation flag
+		System.arraycopy(syncsafe(bytes.length - 10), 0, bytes, 6, 4);
+		bytes = Arrays.copyOf(bytes, bytes.length + 1); // trailing byte must not be consumed
+		ID3v2Info expected = new ID3v2Info(new ByteArrayInputStream(plain), Level.FINEST);
+		for (int bufferSize : new int[]{ 0, 1024, Integer.MAX_VALUE }) {
+			PositionInputStream input = new PositionInputStream(new ByteArrayInputStream(bytes));
+			ID3v2Info info = new ID3v2Info(input, Level.FINEST, bufferSize);
+			Assert.assertEquals(bytes.length - 1, input.getPosition());
+			check(expected, info);
+		}
+	}
+
+	@Test
+	public void testFrameUnsynchronization() throws Exception {
+		byte[] picture = ("\0image/jpeg\0\u0003Cover\0").getBytes(StandardCharsets.ISO_8859_1);
+		byte[] apic = Arrays.copyOf(picture, picture.length + 256 * 1024);
+		for (int i = picture.length; i < apic.length; i++) {
+			apic[i] = (byte)i;
+		}
+		for (boolean dataLengthIndicator : new boolean[]{ false, true }) {
+			ByteArrayOutputStream frames = new ByteArrayOutputStream();
+			byte[] body = unsynchronize(apic, 0);
+			frames.write("APIC".getBytes(StandardCharsets.ISO_8859_1));
+			frames.write(syncsafe(body.length + (dataLengthIndicator ? 4 : 0)));
+			frames.write(new byte[]{ 0, (byte)(dataLengthIndicator ? 0x03 : 0x02) });
+			if (dataLengthIndicator) {
+				frames.write(syncsafe(apic.length));
+			}
+			frames.write(body);
+			frames.write("TIT2".getBytes(StandardCharsets.ISO_8859_1));
+			frames.write(syncsafe(6));
+			frames.write(new byte[]{ 0, 0 });
+			frames.write("\0Title".getBytes(StandardCharsets.ISO_8859_1));
+			ByteArrayOutputStream tag = new ByteArrayOutputStream();
+			tag.write(new byte[]{ 'I', 'D', '3', 4, 0, 0 });
+			tag.write(syncsafe(frames.size()));
+			frames.writeTo(tag);
+			tag.write(0); // trailing byte must not be consumed
+			byte[] bytes = tag.toByteArray();
+			for (int bufferSize : new int[]{ 0, 1024, Integer.MAX_VALUE }) {
+				PositionInputStream input = new PositionInputStream(new ByteArrayInputStream(bytes));
+				ID3v2Info info = new ID3v2Info(input, Level.FINEST, bufferSize);
+				Assert.assertEquals(bytes.length - 1, input.getPosition());
+				Assert.assertEquals("Title", info.getTitle());
+				Assert.assertArrayEquals(Arrays.copyOfRange(apic, picture.length, apic.length), info.getCover());
+			}
+		}
+	}
+
+	@Test
+	public void testUnsyncInputStream() throws Exception {
+		byte[] bytes = { 1, (byte)0xFF, 0, (byte)0xFF, 0, 0, (byte)0xFF, (byte)0xE0, (byte)0xFF, 0 };
+		byte[] expected = { 1, (byte)0xFF, (byte)0xFF, 0, (byte)0xFF, (byte)0xE0, (byte)0xFF };
+		byte[] copy = bytes.clone();
+		Assert.assertEquals(expected.length, ID3v2UnsyncInputStream.decode(copy, 0, copy.length));
+		Assert.assertArrayEquals(expected, Arrays.copyOf(copy, expected.length));
+		for (int chunk = 1; chunk <= bytes.length; chunk++) { // sequences split across reads
+			ID3v2UnsyncInputStream input = new ID3v2UnsyncInputStream(new ByteArrayInputStream(bytes));
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[chunk];
+			int count;
+			while ((count = input.read(buffer, 0, chunk)) > 0) {
+				output.write(buffer, 0, count);
+			}
+			Assert.assertArrayEquals(expected, output.toByteArray());
+		}
+		ID3v2UnsyncInputStream input = new ID3v2UnsyncInputStream(new ByteArrayInputStream(bytes));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		int b;
+		while ((b = input.read()) >= 0) {
+			output.write(b);
+		}
+		Assert.assertArrayEquals(expected, output.toByteArray());
+	}
+
+	private static byte[] deflate(byte[] bytes) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (DeflaterOutputStream deflater = new DeflaterOutputStream(output)) {
+			deflater.write(bytes);
+		}
+		return output.toByteArray();
+	}
+
+	@Test
+	public void testCompression() throws Exception {
+		byte[] picture = ("\0image/jpeg\0\u0003Cover\0").getBytes(StandardCharsets.ISO_8859_1);
+		byte[] apic = Arrays.copyOf(picture, picture.length + 256 * 1024);
+		for (int i = picture.length; i < apic.length; i++) {
+			apic[i] = (byte)(i / 100);
+		}
+		byte[] tit2 = "\0Title".getBytes(StandardCharsets.ISO_8859_1);
+		for (int version : new int[]{ 3, 4 }) {
+			ByteArrayOutputStream frames = new ByteArrayOutputStream();
+			for (byte[][] frame : new byte[][][]{ { "APIC".getBytes(StandardCharsets.ISO_8859_1), apic }, { "TIT2".getBytes(StandardCharsets.ISO_8859_1), tit2 } }) {
+				byte[] body = deflate(frame[1]);
+				int size = body.length + 4;
+				frames.write(frame[0]);
+				if (version == 3) {
+					frames.write(new byte[]{ (byte)(size >> 24), (byte)(size >> 16), (byte)(size >> 8), (byte)size, 0, (byte)0x80 });
+					frames.write(new byte[]{ (byte)(frame[1].length >> 24), (byte)(frame[1].length >> 16), (byte)(frame[1].length >> 8), (byte)frame[1].length });
+				} else {
+					frames.write(syncsafe(size));
+					frames.write(new byte[]{ 0, 0x09 }); // compression, data length indicator
+					frames.write(syncsafe(frame[1].length));
+				}
+				frames.write(body);
+			}
+			ByteArrayOutputStream tag = new ByteArrayOutputStream();
+			tag.write(new byte[]{ 'I', 'D', '3', (byte)version, 0, 0 });
+			tag.write(syncsafe(frames.size()));
+			frames.writeTo(tag);
+			tag.write(0); // trailing byte must not be consumed
+			byte[] bytes = tag.toByteArray();
+			for (int bufferSize : new int[]{ 0, 1024, Integer.MAX_VALUE }) { // streamed, inflated from stream, buffered
+				PositionInputStream input = new PositionInputStream(new ByteArrayInputStream(bytes));
+				ID3v2Info info = new ID3v2Info(input, Level.FINEST, bufferSize);
+				Assert.assertEquals(bytes.length - 1, input.getPosition());
+				Assert.assertEquals("Title", info.getTitle());
+				Assert.assertArrayEquals(Arrays.copyOfRange(apic, picture.length, apic.length), info.getCover());
+			}
+		}
+	}
+
+	@Test
+	public void testCompressionOnDemand() throws Exception {
+		ByteBuffer garbage = ByteBuffer.wrap(new byte[]{ 1, 2, 3, 4, 5, 6 });
+		ID3v2FrameBody body = new ID3v2FrameBody(garbage, 100, 10, null, null);
+		Assert.assertEquals(100, body.getRemainingLength());
+		body.skipRemaining(); // not inflated
+		Assert.assertEquals(0, body.getRemainingLength());
+		body = new ID3v2FrameBody(garbage, 100, 10, null, null);
+		try {
+			body.readEncoding();
+			Assert.fail();
+		} catch (ID3v2Exception e) {
+			// expected
+		}
+		body = new ID3v2FrameBody(garbage, 100, 10, null, null);
+		ID3v2DataInput data = body.getData(); // not inflated
+		try {
+			data.readByte();
+			Assert.fail();
+		} catch (ZipException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testParsedFrames() throws Exception {
+		ID3v2Info info = new ID3v2Info(new ByteArrayInputStream(new byte[0]), Level.FINEST);
+		ID3v2TagHeader tagHeader = new ID3v2TagHeader(new ByteArrayInputStream(new byte[]{ 'I', 'D', '3', 3, 0, 0, 0, 0, 0, 11 }));
+		ID3v2FrameHeader frameHeader = new ID3v2FrameHeader();
+		for (Field field : ID3v2FrameId.class.getDeclaredFields()) {
+			if (field.getType() != int.class || Modifier.isPrivate(field.getModifiers())) {
+				continue;
+			}
+			int id = field.getInt(null);
+			ByteBuffer frame = ByteBuffer.allocate(11).putInt(id).putInt(1).putShort((short)0).put((byte)0xFF); // invalid encoding
+			ID3v2TagBody tagBody = new ID3v2TagBody((ByteBuffer)frame.flip(), 10, tagHeader);
+			frameHeader.read(tagBody);
+			boolean evaluated;
+			try {
+				evaluated = info.parseFrame(tagBody.frameBody(frameHeader));
+			} catch (ID3v2Exception | IOException e) {
+				evaluated = true; // frame body has been read
+			}
+			Assert.assertEquals(field.getName(), evaluated, ID3v2Info.isParsed(id));
+		}
+	}
 }
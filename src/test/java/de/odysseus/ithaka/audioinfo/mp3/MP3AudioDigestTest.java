@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.odysseus.ithaka.audioinfo.util.ByteBufferSource;
+
+public class MP3AudioDigestTest {
+	/*
+	 * Prepend ID3v2.3 tag with padding.
+	 */
+	private byte[] withTag(byte[] audio, int padding) {
+		byte[] bytes = new byte[10 + padding + audio.length];
+		System.arraycopy(new byte[] { 'I', 'D', '3', 3, 0, 0, 0, 0, (byte)(padding >> 7), (byte)(padding & 0x7F) }, 0, bytes, 0, 10);
+		System.arraycopy(audio, 0, bytes, 10 + padding, audio.length);
+		return bytes;
+	}
+
+	private MP3Options options(DurationStrategy strategy, long stride) {
+		MP3Options options = new MP3Options();
+		options.setDurationStrategy(strategy);
+		options.setDurationSamples(4);
+		options.setDurationSampleSize(4096);
+		options.setDigestAlgorithm("SHA-256");
+		options.setDigestStride(stride);
+		options.setDigestWindowSize(1024);
+		return options;
+	}
+
+	private void assertDigest(byte[] expected, byte[] bytes, long stride) throws Exception {
+		for (DurationStrategy strategy : DurationStrategy.values()) {
+			try (InputStream input = new BufferedInputStream(new ByteArrayInputStream(bytes))) {
+				Assert.assertArrayEquals(strategy.name(), expected, new MP3Info(input, bytes.length, Level.FINEST, options(strategy, stride)).getAudioDigest());
+			}
+			Assert.assertArrayEquals(strategy.name(), expected, new MP3Info(new ByteBufferSource(bytes), Level.FINEST, options(strategy, stride)).getAudioDigest());
+			Path path = Files.createTempFile("digest", ".mp3");
+			try {
+				Files.write(path, bytes);
+				Assert.assertArrayEquals(strategy.name(), expected, new MP3Info(path, Level.FINEST, options(strategy, stride)).getAudioDigest());
+			} finally {
+				Files.delete(path);
+			}
+		}
+	}
+
+	@Test
+	public void testSample() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		byte[] bytes = Files.readAllBytes(mp3File.toPath());
+		MP3Options indexOptions = new MP3Options();
+		indexOptions.setFrameIndexInterval(1);
+		MP3FrameIndex index = new MP3Info(mp3File.toPath(), Level.FINEST, indexOptions).getFrameIndex();
+		int start = (int)index.getOffset(0);
+		int end = (int)index.getOffset(index.getSize() - 1);
+		end += MP3Frame.Header.tryDecode(bytes[end + 1] & 0xFF, bytes[end + 2] & 0xFF, bytes[end + 3] & 0xFF).getFrameSize();
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		digest.update(bytes, start, end - start);
+		byte[] expected = digest.digest();
+
+		assertDigest(expected, bytes, 0);
+		assertDigest(expected, withTag(bytes, 1000), 0);
+	}
+
+	@Test
+	public void testSampled() throws Exception {
+		byte[] audio = MP3TestData.createFrames(new Random(4711), 1000, false);
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		int position = 0;
+		while (position < audio.length) {
+			int frameSize = MP3Frame.Header.tryDecode(audio[position + 1] & 0xFF, audio[position + 2] & 0xFF, audio[position + 3] & 0xFF).getFrameSize();
+			if (position % 10000 < 1024) {
+				digest.update(audio, position, frameSize);
+			}
+			position += frameSize;
+		}
+		byte[] expected = digest.digest();
+
+		assertDigest(expected, audio, 10000);
+		assertDigest(expected, withTag(audio, 1000), 10000);
+		assertDigest(expected, withTag(audio, 5555), 10000);
+
+		digest.update(audio);
+		Assert.assertFalse(MessageDigest.isEqual(expected, new MP3Info(new ByteBufferSource(audio), Level.FINEST, options(DurationStrategy.TRUST_TAGS, 0)).getAudioDigest()));
+		Assert.assertArrayEquals(digest.digest(), new MP3Info(new ByteBufferSource(audio), Level.FINEST, options(DurationStrategy.TRUST_TAGS, 0)).getAudioDigest());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedAlgorithm() throws Exception {
+		new MP3Options().setDigestAlgorithm("NO-SUCH-DIGEST");
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MP3AuditTest {
+	private static final int FRAME_SIZE = 417; // MPEG1 Layer III, 128kbps, 44.1kHz
+
+	private MP3Options options() {
+		MP3Options options = new MP3Options();
+		options.setAudit(true);
+		return options;
+	}
+
+	/*
+	 * Create CRC protected frame (MPEG1 Layer III, 44.1kHz, joint stereo).
+	 */
+	private byte[] createFrame(int bitrateIndex) {
+		MP3Frame.Header header = MP3Frame.Header.tryDecode(0xFA, bitrateIndex << 4, 0x40);
+		byte[] frame = new byte[header.getFrameSize()];
+		frame[0] = (byte)0xFF;
+		frame[1] = (byte)0xFA;
+		frame[2] = (byte)(bitrateIndex << 4);
+		frame[3] = (byte)0x40;
+		for (int i = 6; i < frame.length; i++) {
+			frame[i] = (byte)(i & 0x7F);
+		}
+		MP3Frame.CRC16 crc16 = new MP3Frame.CRC16();
+		crc16.update(frame, 2, 2);
+		crc16.update(frame, 6, header.getChecksumSize() - 6);
+		frame[4] = (byte)(crc16.getValue() >> 8);
+		frame[5] = (byte)crc16.getValue();
+		return frame;
+	}
+
+	private MP3Info[] read(byte[] bytes) throws Exception {
+		MP3Info[] infos = new MP3Info[2];
+		try (InputStream input = new BufferedInputStream(new ByteArrayInputStream(bytes))) {
+			infos[0] = new MP3Info(input, bytes.length, Level.FINEST, options());
+		}
+		Path path = Files.createTempFile("audit", ".mp3");
+		try {
+			Files.write(path, bytes);
+			infos[1] = new MP3Info(path, Level.FINEST, options());
+		} finally {
+			Files.delete(path);
+		}
+		return infos;
+	}
+
+	@Test
+	public void testSample() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		MP3Info info = new MP3Info(mp3File.toPath(), Level.FINEST, options());
+		MP3Audit audit = info.getAudit();
+		Assert.assertTrue(audit.getIssues().toString(), audit.isValid());
+		Assert.assertEquals(info.getVBRHeader().getFrames(), audit.getFrames());
+		Assert.assertEquals(0, audit.getProtectedFrames());
+		Assert.assertEquals(4440L, info.getDuration());
+		Assert.assertEquals(DurationMethod.SCAN, info.getDurationMethod());
+	}
+
+	@Test
+	public void testValid() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (int i = 0; i < 100; i++) {
+			output.write(createFrame(9));
+		}
+		for (MP3Info info : read(output.toByteArray())) {
+			MP3Audit audit = info.getAudit();
+			Assert.assertTrue(audit.getIssues().toString(), audit.isValid());
+			Assert.assertEquals(100, audit.getFrames());
+			Assert.assertEquals(100, audit.getProtectedFrames());
+			Assert.assertEquals(0, audit.getStartPosition());
+			Assert.assertEquals(100 * FRAME_SIZE, audit.getEndPosition());
+			Assert.assertFalse(audit.isVBR());
+		}
+	}
+
+	@Test
+	public void testIssues() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (int i = 0; i < 200; i++) {
+			byte[] frame = createFrame(i < 150 ? 9 : 10);
+			if (i == 50) {
+				frame[5] ^= 0x01; // CRC error
+			}
+			if (i == 199) {
+				output.write(frame, 0, frame.length - 100); // truncated frame
+			} else {
+				output.write(frame);
+			}
+			if (i == 100) {
+				output.write(new byte[7]); // sync loss
+			}
+		}
+		long truncatedPosition = output.size() - (createFrame(10).length - 100);
+		for (MP3Info info : read(output.toByteArray())) {
+			MP3Audit audit = info.getAudit();
+			Assert.assertEquals(199, audit.getFrames());
+			Assert.assertEquals(199, audit.getProtectedFrames());
+			Assert.assertTrue(audit.isVBR());
+			Assert.assertEquals(truncatedPosition, audit.getEndPosition());
+			List<MP3Audit.Issue> issues = audit.getIssues();
+			Assert.assertEquals(issues.toString(), 3, issues.size());
+			Assert.assertEquals(MP3Audit.Type.CRC_ERROR, issues.get(0).getType());
+			Assert.assertEquals(50 * FRAME_SIZE, issues.get(0).getOffset());
+			Assert.assertEquals(MP3Audit.Type.SYNC_LOSS, issues.get(1).getType());
+			Assert.assertEquals(101 * FRAME_SIZE, issues.get(1).getOffset());
+			Assert.assertEquals("resync at " + (101 * FRAME_SIZE + 7), issues.get(1).getMessage());
+			Assert.assertEquals(MP3Audit.Type.TRUNCATED_FRAME, issues.get(2).getType());
+			Assert.assertEquals(truncatedPosition, issues.get(2).getOffset());
+			Assert.assertEquals(1, audit.getIssueCount(MP3Audit.Type.CRC_ERROR));
+			Assert.assertEquals(0, audit.getIssueCount(MP3Audit.Type.BITRATE_ANOMALY)); // VBR without header is fine
+			Assert.assertEquals(0, audit.getIssueCount(MP3Audit.Type.VBR_HEADER_MISMATCH));
+			Assert.assertEquals(1000L * 199 * 1152 / 44100, info.getDuration());
+		}
+	}
+
+	@Test
+	public void testBitrateAnomaly() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] info = new byte[FRAME_SIZE]; // unprotected Info frame (Xing header of a CBR stream)
+		info[0] = (byte)0xFF;
+		info[1] = (byte)0xFB;
+		info[2] = (byte)0x90;
+		info[3] = (byte)0x40;
+		System.arraycopy(new byte[] { 'I', 'n', 'f', 'o' }, 0, info, 36, 4);
+		output.write(info);
+		for (int i = 0; i < 100; i++) {
+			output.write(createFrame(i == 60 ? 10 : 9));
+		}
+		for (MP3Info mp3Info : read(output.toByteArray())) {
+			MP3Audit audit = mp3Info.getAudit();
+			Assert.assertEquals(100, audit.getFrames());
+			List<MP3Audit.Issue> issues = audit.getIssues();
+			Assert.assertEquals(issues.toString(), 1, issues.size());
+			Assert.assertEquals(MP3Audit.Type.BITRATE_ANOMALY, issues.get(0).getType());
+			Assert.assertEquals(61 * FRAME_SIZE, issues.get(0).getOffset());
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.odysseus.ithaka.audioinfo.util.ByteBufferSource;
+
+public class MP3CutterTest {
+	private Path sample() throws Exception {
+		return new File(getClass().getResource("/sample-assets/sample.mp3").toURI()).toPath();
+	}
+
+	private MP3Info read(byte[] bytes, DurationStrategy strategy) throws Exception {
+		MP3Options options = new MP3Options();
+		options.setDurationStrategy(strategy);
+		return new MP3Info(new ByteBufferSource(bytes), Level.FINEST, options);
+	}
+
+	@Test
+	public void testCut() throws Exception {
+		try (FileChannel channel = FileChannel.open(sample(), StandardOpenOption.READ)) {
+			MP3Cutter cutter = new MP3Cutter(channel);
+			Assert.assertEquals(170, cutter.getFrames());
+			Assert.assertEquals(38, cutter.frameAt(1000, false));
+			Assert.assertEquals(77, cutter.frameAt(2000, true));
+			int first = cutter.reservoirStart(38);
+			Assert.assertEquals(37, first); // main_data_begin of frame 38 points into frame 37
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			long written = cutter.cut(1000, 2000, Channels.newChannel(output));
+			byte[] bytes = output.toByteArray();
+			Assert.assertEquals(written, bytes.length);
+
+			MP3Info info = read(bytes, DurationStrategy.HEADER_ONLY);
+			Assert.assertEquals(DurationMethod.HEADER, info.getDurationMethod());
+			Assert.assertEquals(77 - first, info.getVBRHeader().getFrames());
+			Assert.assertEquals(bytes.length, info.getVBRHeader().getBytes());
+			MP3Info scanned = read(bytes, DurationStrategy.EXACT_SCAN);
+			Assert.assertEquals(info.getDuration(), scanned.getDuration());
+			Assert.assertEquals(1000L * (77 - first) * 1152 / 44100, scanned.getDuration());
+		}
+	}
+
+	@Test
+	public void testCutWithoutHeader() throws Exception {
+		byte[] source = Files.readAllBytes(sample());
+		byte[] tag = Arrays.copyOf(source, new ID3v2TagHeader(new ByteArrayInputStream(source)).getTotalTagSize());
+		try (FileChannel channel = FileChannel.open(sample(), StandardOpenOption.READ)) {
+			MP3Cutter cutter = new MP3Cutter(channel);
+			cutter.setXingHeader(false);
+			cutter.setID3v2Tag(tag);
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			cutter.cut(0, Long.MAX_VALUE, Channels.newChannel(output));
+			byte[] bytes = output.toByteArray();
+			MP3Info info = read(bytes, DurationStrategy.EXACT_SCAN);
+			Assert.assertEquals(new MP3Info(sample()).getTitle(), info.getTitle());
+			Assert.assertNull(info.getVBRHeader());
+			Assert.assertEquals(1000L * 170 * 1152 / 44100, info.getDuration());
+
+			// audio is copied as is
+			int audioStart = (int)cutter.getOffset(0);
+			Assert.assertEquals(ByteBuffer.wrap(source, audioStart, bytes.length - tag.length), ByteBuffer.wrap(bytes, tag.length, bytes.length - tag.length));
+		}
+	}
+
+	@Test
+	public void testReservoir() throws Exception {
+		byte[] source = Files.readAllBytes(sample());
+		Path path = Files.createTempFile("reservoir", ".mp3");
+		try {
+			int mainDataBegin;
+			try (FileChannel channel = FileChannel.open(sample(), StandardOpenOption.READ)) {
+				MP3Cutter cutter = new MP3Cutter(channel);
+				int offset = (int)cutter.getOffset(38) + 4; // MPEG1 Layer III, no CRC: side info follows the header
+				mainDataBegin = ((source[offset] & 0xFF) << 1) | ((source[offset + 1] & 0xFF) >> 7);
+				Assert.assertTrue(mainDataBegin > 0);
+				Assert.assertEquals(37, cutter.reservoirStart(38)); // fits into one frame's main data (208 - 4 - 32 bytes)
+				source[offset] = (byte)(400 >> 1); // needs three preceding frames (2 * 172 < 400 <= 3 * 172)
+				source[offset + 1] = (byte)((source[offset + 1] & 0x7F) | (400 & 1) << 7);
+				offset = (int)cutter.getOffset(39) + 4;
+				source[offset] = 0;
+				source[offset + 1] &= 0x7F;
+			}
+			Files.write(path, source);
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				MP3Cutter cutter = new MP3Cutter(channel);
+				Assert.assertEquals(35, cutter.reservoirStart(38));
+				Assert.assertEquals(39, cutter.reservoirStart(39)); // no main data in preceding frames
+				Assert.assertEquals(0, cutter.reservoirStart(0));
+
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				cutter.cut(1000, 2000, Channels.newChannel(output)); // frames 38..76, starting three frames early
+				MP3Info info = read(output.toByteArray(), DurationStrategy.HEADER_ONLY);
+				Assert.assertEquals(77 - 35, info.getVBRHeader().getFrames());
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRange() throws Exception {
+		try (FileChannel channel = FileChannel.open(sample(), StandardOpenOption.READ)) {
+			new MP3Cutter(channel).cut(100000, 200000, Channels.newChannel(new ByteArrayOutputStream()));
+		}
+	}
+}
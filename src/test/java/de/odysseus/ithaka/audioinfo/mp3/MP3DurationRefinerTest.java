@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MP3DurationRefinerTest {
+	static class Results implements MP3DurationRefiner.Listener {
+		final Map<Path, MP3Info> refined = new ConcurrentHashMap<Path, MP3Info>();
+		final Map<Path, Exception> failed = new ConcurrentHashMap<Path, Exception>();
+
+		@Override
+		public void durationRefined(Path path, MP3Info info) {
+			refined.put(path, info);
+		}
+
+		@Override
+		public void refinementFailed(Path path, Exception e) {
+			failed.put(path, e);
+		}
+	}
+
+	@Test
+	public void testRefine() throws Exception {
+		Path path = new File(getClass().getResource("/sample-assets/sample.mp3").toURI()).toPath();
+		Path missing = path.resolveSibling("missing.mp3");
+		MP3Options options = new MP3Options();
+		options.setDurationStrategy(DurationStrategy.HEADER_ONLY);
+		MP3Info info = new MP3Info(path, Level.FINEST, options);
+		Assert.assertEquals(DurationMethod.HEADER, info.getDurationMethod());
+		Assert.assertFalse(info.isDurationExact());
+
+		Results results = new Results();
+		MP3DurationRefiner refiner = new MP3DurationRefiner(2, 10);
+		Assert.assertTrue(refiner.submit(path, results));
+		Assert.assertTrue(refiner.submit(missing, results));
+		refiner.shutdown();
+		Assert.assertFalse(refiner.submit(path, results));
+		Assert.assertTrue(refiner.awaitTermination(10, TimeUnit.SECONDS));
+
+		MP3Info refined = results.refined.get(path);
+		Assert.assertEquals(DurationMethod.SCAN, refined.getDurationMethod());
+		Assert.assertTrue(refined.isDurationExact());
+		Assert.assertEquals(new MP3Info(path).getTitle(), refined.getTitle());
+		Assert.assertNotNull(results.failed.get(missing));
+		Assert.assertEquals(1, results.refined.size());
+	}
+
+	@Test
+	public void testRefineWithoutVBRHeader() throws Exception {
+		Path path = Files.createTempFile("vbr", ".mp3");
+		try {
+			Files.write(path, MP3TestData.createFrames(new Random(19), 1000, false));
+			MP3Options options = new MP3Options();
+			options.setDurationStrategy(DurationStrategy.EXACT_SCAN);
+			MP3Info scanned = new MP3Info(path, Level.FINEST, options);
+			MP3Info info = new MP3Info(path);
+			Assert.assertEquals(1000L * 1000 * 1152 / 44100, scanned.getDuration());
+
+			Results results = new Results();
+			MP3DurationRefiner refiner = new MP3DurationRefiner(1, 1);
+			Assert.assertTrue(refiner.submit(path, results));
+			refiner.shutdown();
+			Assert.assertTrue(refiner.awaitTermination(10, TimeUnit.SECONDS));
+
+			MP3Info refined = results.refined.get(path);
+			Assert.assertEquals(scanned.getDuration(), refined.getDuration());
+			Assert.assertEquals(info.getDuration(), refined.getDuration());
+			Assert.assertEquals(DurationMethod.SCAN, info.getDurationMethod());
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidStrategy() {
+		new MP3DurationRefiner(1, 1, new MP3Options());
+	}
+}
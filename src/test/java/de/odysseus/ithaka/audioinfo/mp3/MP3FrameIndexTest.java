@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MP3FrameIndexTest {
+	private MP3Options options(int interval) {
+		MP3Options options = new MP3Options();
+		options.setFrameIndexInterval(interval);
+		return options;
+	}
+
+	private void assertEquals(MP3FrameIndex expected, MP3FrameIndex actual) {
+		Assert.assertEquals(expected.getFrames(), actual.getFrames());
+		Assert.assertEquals(expected.getInterval(), actual.getInterval());
+		Assert.assertEquals(expected.getSize(), actual.getSize());
+		Assert.assertEquals(expected.getDuration(), actual.getDuration());
+		for (int i = 0; i < expected.getSize(); i++) {
+			Assert.assertEquals(expected.getOffset(i), actual.getOffset(i));
+			Assert.assertEquals(expected.getTime(i), actual.getTime(i));
+		}
+	}
+
+	@Test
+	public void testSample() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		MP3Info info = new MP3Info(mp3File.toPath(), Level.FINEST, options(10));
+		MP3FrameIndex index = info.getFrameIndex();
+		Assert.assertEquals(info.getVBRHeader().getFrames(), index.getFrames());
+		Assert.assertEquals(17, index.getSize());
+		Assert.assertEquals(4440L, index.getDuration());
+		Assert.assertEquals(4440L, info.getDuration());
+
+		byte[] bytes = Files.readAllBytes(mp3File.toPath());
+		long offset = index.timeToOffset(0);
+		Assert.assertEquals(0xFF, bytes[(int)offset] & 0xFF);
+		Assert.assertEquals(offset, index.getOffset(0));
+		for (int i = 1; i < index.getSize(); i++) {
+			long time = index.getTime(i);
+			Assert.assertEquals(index.getOffset(i), index.timeToOffset(time));
+			Assert.assertEquals(index.getOffset(i - 1), index.timeToOffset(time - 1));
+			Assert.assertEquals(time, index.offsetToTime(index.getOffset(i)));
+			Assert.assertEquals(index.getTime(i - 1), index.offsetToTime(index.getOffset(i) - 1));
+			Assert.assertEquals(0xFF, bytes[(int)index.getOffset(i)] & 0xFF);
+		}
+		Assert.assertEquals(-1L, index.offsetToTime(offset - 1));
+		Assert.assertEquals(index.getOffset(index.getSize() - 1), index.timeToOffset(Long.MAX_VALUE / 1000000));
+
+		try (InputStream input = new BufferedInputStream(new ByteArrayInputStream(bytes))) {
+			assertEquals(index, new MP3Info(input, bytes.length, Level.FINEST, options(10)).getFrameIndex());
+		}
+	}
+
+	@Test
+	public void testReadWrite() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		for (int interval = 1; interval < 200; interval += 7) {
+			MP3FrameIndex index = new MP3Info(mp3File.toPath(), Level.FINEST, options(interval)).getFrameIndex();
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			index.write(output);
+			assertEquals(index, MP3FrameIndex.read(new ByteArrayInputStream(output.toByteArray())));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadInvalid() throws Exception {
+		MP3FrameIndex.read(new ByteArrayInputStream("MP3Info".getBytes("ASCII")));
+	}
+
+	private static byte[] index(long frames, int size, long... deltas) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(output);
+		data.writeInt(0x4D503349); // "MP3I"
+		data.writeByte(1);
+		data.writeShort(1); // interval
+		data.writeShort(1152);
+		data.writeInt(44100);
+		data.writeLong(frames);
+		data.writeInt(size);
+		for (long delta : deltas) {
+			while ((delta & ~0x7FL) != 0) {
+				data.writeByte((int)(delta & 0x7F) | 0x80);
+				delta >>>= 7;
+			}
+			data.writeByte((int)delta);
+		}
+		return output.toByteArray();
+	}
+
+	@Test(expected = EOFException.class)
+	public void testReadTruncatedHugeSize() throws Exception {
+		MP3FrameIndex.read(new ByteArrayInputStream(index(Integer.MAX_VALUE, Integer.MAX_VALUE, 0, 417)));
+	}
+
+	@Test
+	public void testReadDeltaRange() throws Exception {
+		long[] deltas = new long[65];
+		deltas[1] = Integer.MAX_VALUE;
+		deltas[64] = 1L << 40; // starts a new block
+		MP3FrameIndex index = MP3FrameIndex.read(new ByteArrayInputStream(index(deltas.length, deltas.length, deltas)));
+		Assert.assertEquals(Integer.MAX_VALUE, index.getOffset(1));
+		Assert.assertEquals(Integer.MAX_VALUE + (1L << 40), index.getOffset(64));
+		try {
+			MP3FrameIndex.read(new ByteArrayInputStream(index(2, 2, 0, 1L << 31))); // exceeds block range
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertEquals("Invalid frame index", e.getMessage());
+		}
+		try {
+			MP3FrameIndex.read(new ByteArrayInputStream(index(2, 2, 0, -1L))); // negative delta
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertEquals("Invalid frame index", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MP3FrameTest {
+	@Test
+	public void testHeaderDecode() throws Exception {
+		for (int b1 = 0xE0; b1 <= 0xFF; b1++) {
+			for (int b2 = 0; b2 <= 0xFF; b2++) {
+				for (int b3 = 0; b3 <= 0xFF; b3++) {
+					MP3Frame.Header expected = null;
+					try {
+						expected = new MP3Frame.Header(b1, b2, b3);
+					} catch (MP3Exception e) {
+						// invalid
+					}
+					MP3Frame.Header actual = MP3Frame.Header.tryDecode(b1, b2, b3);
+					if (expected == null) {
+						Assert.assertNull(actual);
+						try {
+							MP3Frame.Header.valueOf(b1, b2, b3);
+							Assert.fail();
+						} catch (MP3Exception e) {
+							// expected
+						}
+					} else {
+						Assert.assertNotNull(actual);
+						Assert.assertSame(actual, MP3Frame.Header.valueOf(b1, b2, b3));
+						Assert.assertEquals(expected.getVersion(), actual.getVersion());
+						Assert.assertEquals(expected.getLayer(), actual.getLayer());
+						Assert.assertEquals(expected.getProtection(), actual.getProtection());
+						Assert.assertEquals(expected.getChannelMode(), actual.getChannelMode());
+						Assert.assertEquals(expected.getBitrate(), actual.getBitrate());
+						Assert.assertEquals(expected.getFrequency(), actual.getFrequency());
+						Assert.assertEquals(expected.getFrameSize(), actual.getFrameSize());
+						Assert.assertEquals(expected.getSideInfoSize(), actual.getSideInfoSize());
+						Assert.assertEquals(expected.getDuration(), actual.getDuration());
+						Assert.assertTrue(actual.isCompatible(expected));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSampleCount() throws Exception {
+		Assert.assertEquals(384, MP3Frame.Header.valueOf(0xFF, 0x90, 0x40).getSampleCount()); // MPEG-1 Layer I
+		Assert.assertEquals(1152, MP3Frame.Header.valueOf(0xFD, 0x90, 0x40).getSampleCount()); // MPEG-1 Layer II
+		Assert.assertEquals(1152, MP3Frame.Header.valueOf(0xFB, 0x90, 0x40).getSampleCount()); // MPEG-1 Layer III
+		Assert.assertEquals(1152, MP3Frame.Header.valueOf(0xF5, 0x80, 0x40).getSampleCount()); // MPEG-2 Layer II
+		Assert.assertEquals(576, MP3Frame.Header.valueOf(0xF3, 0x80, 0x40).getSampleCount()); // MPEG-2 Layer III, joint stereo
+		Assert.assertEquals(576, MP3Frame.Header.valueOf(0xF3, 0x80, 0xC0).getSampleCount()); // MPEG-2 Layer III, mono
+		Assert.assertEquals(576, MP3Frame.Header.valueOf(0xE3, 0x80, 0x40).getSampleCount()); // MPEG-2.5 Layer III
+	}
+
+	@Test
+	public void testCRC16() throws Exception {
+		byte[] bytes = new byte[1000];
+		new Random(4711).nextBytes(bytes);
+		MP3Frame.CRC16 expected = new MP3Frame.CRC16();
+		MP3Frame.CRC16 actual = new MP3Frame.CRC16();
+		MP3Frame.CRC16 array = new MP3Frame.CRC16();
+		for (byte b : bytes) {
+			expected.update(b & 0xFF, 8);
+			actual.update(b);
+			Assert.assertEquals(expected.getValue(), actual.getValue());
+		}
+		array.update(bytes, 0, bytes.length);
+		Assert.assertEquals(expected.getValue(), array.getValue());
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.odysseus.ithaka.audioinfo.util.ByteBufferSource;
+
+public class MP3FrameVisitorTest {
+	static class Recorder implements MP3FrameVisitor {
+		final boolean dataRequired;
+		final List<Long> offsets = new ArrayList<Long>();
+		long bytes;
+
+		Recorder(boolean dataRequired) {
+			this.dataRequired = dataRequired;
+		}
+
+		@Override
+		public boolean isDataRequired() {
+			return dataRequired;
+		}
+
+		@Override
+		public void visitFrame(MP3Frame.Header header, long offset, int size, ByteBuffer data) {
+			Assert.assertEquals(header.getFrameSize(), size);
+			if (dataRequired) {
+				Assert.assertTrue(data.isReadOnly());
+				Assert.assertEquals(size, data.remaining());
+				Assert.assertEquals(0xFF, data.get(data.position()) & 0xFF);
+				while (data.hasRemaining()) {
+					bytes += data.get() & 0xFF;
+				}
+			} else {
+				Assert.assertNull(data);
+			}
+			offsets.add(offset);
+		}
+	}
+
+	private MP3Options options(MP3FrameVisitor... visitors) {
+		MP3Options options = new MP3Options();
+		for (MP3FrameVisitor visitor : visitors) {
+			options.addFrameVisitor(visitor);
+		}
+		return options;
+	}
+
+	@Test
+	public void testVisitors() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		byte[] bytes = Files.readAllBytes(mp3File.toPath());
+		MP3Options indexOptions = new MP3Options();
+		indexOptions.setFrameIndexInterval(1);
+		MP3FrameIndex index = new MP3Info(mp3File.toPath(), Level.FINEST, indexOptions).getFrameIndex();
+
+		List<Recorder> recorders = new ArrayList<Recorder>();
+		for (int i = 0; i < 3; i++) {
+			Recorder plain = new Recorder(false);
+			Recorder data = new Recorder(true);
+			recorders.add(plain);
+			recorders.add(data);
+			MP3Info info;
+			if (i == 0) {
+				info = new MP3Info(mp3File.toPath(), Level.FINEST, options(plain, data));
+			} else if (i == 1) {
+				info = new MP3Info(new ByteBufferSource(bytes), Level.FINEST, options(plain, data));
+			} else {
+				try (InputStream input = new BufferedInputStream(new ByteArrayInputStream(bytes))) {
+					info = new MP3Info(input, bytes.length, Level.FINEST, options(plain, data));
+				}
+			}
+			Assert.assertEquals(DurationMethod.SCAN, info.getDurationMethod());
+			Assert.assertEquals(4440L, info.getDuration());
+		}
+		for (Recorder recorder : recorders) {
+			Assert.assertEquals(index.getSize(), recorder.offsets.size());
+			for (int i = 0; i < index.getSize(); i++) {
+				Assert.assertEquals(index.getOffset(i), recorder.offsets.get(i).longValue());
+			}
+			if (recorder.dataRequired) {
+				Assert.assertEquals(recorders.get(1).bytes, recorder.bytes);
+				Assert.assertTrue(recorder.bytes > 0);
+			}
+		}
+	}
+}
@@ -15,13 +15,24 @@
  */
 package de.odysseus.ithaka.audioinfo.mp3;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import de.odysseus.ithaka.audioinfo.mp3.MP3Info;
+import de.odysseus.ithaka.audioinfo.util.ByteBufferSource;
+import de.odysseus.ithaka.audioinfo.util.RandomAccessSource;
 
 public class MP3InfoTest {
 	@Test
@@ -56,6 +67,285 @@ public class MP3InfoTest {
 		}
 	}
 
+	/*
+	 * Load file and disguise its Xing header to force a scan of all frames.
+	 */
+	private byte[] readBytesWithoutXingHeader(File mp3File) throws Exception {
+		byte[] bytes = Files.readAllBytes(mp3File.toPath());
+		for (int i = 0; i < bytes.length - 4; i++) {
+			if (bytes[i] == 'X' && bytes[i + 1] == 'i' && bytes[i + 2] == 'n' && bytes[i + 3] == 'g') {
+				bytes[i] = 'x';
+				break;
+			}
+		}
+		return bytes;
+	}
+
+	@Test
+	public void testSampleScan() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		byte[] bytes = readBytesWithoutXingHeader(mp3File);
+		try (InputStream input = new BufferedInputStream(new ByteArrayInputStream(bytes))) {
+			MP3Info info = new MP3Info(input, bytes.length);
+			Assert.assertEquals("Sample MP3", info.getTitle());
+			Assert.assertEquals(4466L, info.getDuration());
+		}
+	}
+
+	@Test
+	public void testSamplePath() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		MP3Info info = new MP3Info(mp3File.toPath());
+		Assert.assertEquals("MP3", info.getBrand());
+		Assert.assertEquals("Sample MP3", info.getTitle());
+		Assert.assertEquals("Sample Artist", info.getArtist());
+		Assert.assertEquals("Sample Album", info.getAlbum());
+		Assert.assertEquals(4440L, info.getDuration());
+		Assert.assertNotNull(info.getCover());
+	}
+
+	@Test
+	public void testSampleScanPath() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		Path path = Files.createTempFile("sample", ".mp3");
+		try {
+			Files.write(path, readBytesWithoutXingHeader(mp3File));
+			MP3Info info = new MP3Info(path);
+			Assert.assertEquals("Sample MP3", info.getTitle());
+			Assert.assertEquals(4466L, info.getDuration());
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testSampleEstimate() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		byte[] bytes = readBytesWithoutXingHeader(mp3File);
+		MP3Options options = new MP3Options();
+		options.setDurationStrategy(DurationStrategy.SAMPLED);
+		options.setDurationSamples(4);
+		options.setDurationSampleSize(1024);
+		try (InputStream input = new BufferedInputStream(new ByteArrayInputStream(bytes))) {
+			MP3Info info = new MP3Info(input, bytes.length, Level.FINEST, options);
+			Assert.assertEquals("Sample MP3", info.getTitle());
+			Assert.assertEquals(DurationMethod.SAMPLED, info.getDurationMethod());
+			Assert.assertTrue(info.getDurationError() > 0);
+			Assert.assertTrue(Math.abs(info.getDuration() - 4466L) <= info.getDurationError());
+		}
+		Path path = Files.createTempFile("sample", ".mp3");
+		try {
+			Files.write(path, bytes);
+			MP3Info info = new MP3Info(path, Level.FINEST, options);
+			Assert.assertEquals("Sample MP3", info.getTitle());
+			Assert.assertEquals(DurationMethod.SAMPLED, info.getDurationMethod());
+			Assert.assertTrue(info.getDurationError() > 0);
+			Assert.assertTrue(Math.abs(info.getDuration() - 4466L) <= info.getDurationError());
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testSampleEstimateTrailingTag() throws Exception {
+		byte[] bytes = new byte[1000 * 417 + 4096 + 128]; // last window in zeros before ID3v1 tag
+		for (int i = 0; i < 1000; i++) {
+			System.arraycopy(new byte[] { (byte)0xFF, (byte)0xFB, (byte)0x90, (byte)0x40 }, 0, bytes, i * 417, 4);
+		}
+		System.arraycopy(new byte[] { 'T', 'A', 'G' }, 0, bytes, bytes.length - 128, 3);
+		MP3Options options = new MP3Options();
+		options.setDurationStrategy(DurationStrategy.SAMPLED);
+		options.setDurationSamples(4);
+		options.setDurationSampleSize(1024);
+		MP3Info info = new MP3Info(new ByteBufferSource(bytes), Level.FINEST, options);
+		Assert.assertEquals(DurationMethod.SAMPLED, info.getDurationMethod());
+		Assert.assertEquals(1000.0 * (bytes.length - 128) * 1152 / 417 / 44100, info.getDuration(), 1.0);
+	}
+
+	/*
+	 * Prepend ID3v2.3 tag containing a TLEN frame.
+	 */
+	private byte[] withTLEN(byte[] audio, String tlen) {
+		int frameSize = 1 + tlen.length();
+		int tagSize = 10 + frameSize;
+		byte[] bytes = new byte[10 + tagSize + audio.length];
+		System.arraycopy(new byte[] { 'I', 'D', '3', 3, 0, 0, 0, 0, 0, (byte)tagSize }, 0, bytes, 0, 10);
+		System.arraycopy(new byte[] { 'T', 'L', 'E', 'N', 0, 0, 0, (byte)frameSize, 0, 0, 0 }, 0, bytes, 10, 11);
+		for (int i = 0; i < tlen.length(); i++) {
+			bytes[21 + i] = (byte)tlen.charAt(i);
+		}
+		System.arraycopy(audio, 0, bytes, 10 + tagSize, audio.length);
+		return bytes;
+	}
+
+	private MP3Info read(byte[] bytes, DurationStrategy strategy) throws Exception {
+		MP3Options options = new MP3Options();
+		options.setDurationStrategy(strategy);
+		try (InputStream input = new BufferedInputStream(new ByteArrayInputStream(bytes))) {
+			return new MP3Info(input, bytes.length, Level.FINEST, options);
+		}
+	}
+
+	@Test
+	public void testDurationStrategy() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/id3v10.mp3").toURI());
+		byte[] bytes = withTLEN(Files.readAllBytes(mp3File.toPath()), "1234");
+		Assert.assertEquals(DurationMethod.TAG, read(bytes, DurationStrategy.TRUST_TAGS).getDurationMethod());
+		Assert.assertEquals(1234L, read(bytes, DurationStrategy.TRUST_TAGS).getDuration());
+		Assert.assertEquals(DurationMethod.HEADER, read(bytes, DurationStrategy.HEADER_ONLY).getDurationMethod());
+		Assert.assertEquals(DurationMethod.HEADER, read(bytes, DurationStrategy.SAMPLED).getDurationMethod());
+		Assert.assertEquals(DurationMethod.SCAN, read(bytes, DurationStrategy.EXACT_SCAN).getDurationMethod());
+		Assert.assertEquals(156L, read(bytes, DurationStrategy.EXACT_SCAN).getDuration());
+
+		mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		bytes = readBytesWithoutXingHeader(mp3File);
+		MP3Info info = read(bytes, DurationStrategy.TRUST_TAGS);
+		Assert.assertEquals(DurationMethod.SCAN, info.getDurationMethod());
+		Assert.assertEquals(4466L, info.getDuration());
+		info = read(bytes, DurationStrategy.HEADER_ONLY);
+		Assert.assertEquals(DurationMethod.CBR, info.getDurationMethod());
+		Assert.assertFalse(info.isDurationExact());
+		Assert.assertEquals(4483L, info.getDuration());
+		info = read(bytes, DurationStrategy.EXACT_SCAN);
+		Assert.assertEquals(DurationMethod.SCAN, info.getDurationMethod());
+		Assert.assertEquals(171 * 1152 * 1000L / 44100, info.getDuration()); // 170 frames + defaced Xing frame
+		Assert.assertTrue(info.isDurationExact());
+	}
+
+	/*
+	 * Create CBR stream (MPEG2 Layer III, 8kbps, 22.05kHz, mono) without Xing header.
+	 */
+	private byte[] createFrames(int frames) {
+		int frameSize = MP3Frame.Header.tryDecode(0xF3, 0x10, 0xC0).getFrameSize();
+		byte[] bytes = new byte[frames * frameSize];
+		for (int i = 0; i < bytes.length; i += frameSize) {
+			bytes[i] = (byte)0xFF;
+			bytes[i + 1] = (byte)0xF3;
+			bytes[i + 2] = (byte)0x10;
+			bytes[i + 3] = (byte)0xC0;
+		}
+		return bytes;
+	}
+
+	@Test
+	public void testMPEG2Stereo() throws Exception {
+		int frameSize = MP3Frame.Header.tryDecode(0xF3, 0x80, 0x40).getFrameSize(); // MPEG2 Layer III, 64kbps, 22.05kHz, joint stereo
+		byte[] bytes = new byte[1000 * frameSize];
+		for (int i = 0; i < bytes.length; i += frameSize) {
+			System.arraycopy(new byte[] { (byte)0xFF, (byte)0xF3, (byte)0x80, (byte)0x40 }, 0, bytes, i, 4);
+		}
+		long duration = 1000L * 1000 * 576 / 22050; // one granule per frame
+		Assert.assertEquals(duration, read(bytes, DurationStrategy.HEADER_ONLY).getDuration());
+		Assert.assertEquals(duration, read(bytes, DurationStrategy.EXACT_SCAN).getDuration());
+		Assert.assertEquals(DurationMethod.CBR, read(bytes, DurationStrategy.TRUST_TAGS).getDurationMethod());
+		Assert.assertEquals(duration, read(bytes, DurationStrategy.TRUST_TAGS).getDuration());
+	}
+
+	@Test
+	public void testTagDurationCheck() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		byte[] audio = Files.readAllBytes(mp3File.toPath());
+		MP3Info info = read(withTLEN(audio, "3600000"), DurationStrategy.TRUST_TAGS);
+		Assert.assertEquals(DurationMethod.HEADER, info.getDurationMethod());
+		Assert.assertEquals(4440L, info.getDuration());
+		info = read(withTLEN(audio, "97391548"), DurationStrategy.TRUST_TAGS);
+		Assert.assertEquals(DurationMethod.HEADER, info.getDurationMethod());
+		Assert.assertEquals(4440L, info.getDuration());
+
+		audio = createFrames(140000);
+		long duration = 1000L * 140000 * 576 / 22050; // more than one hour
+		info = read(withTLEN(audio, String.valueOf(duration)), DurationStrategy.TRUST_TAGS);
+		Assert.assertEquals(DurationMethod.TAG, info.getDurationMethod());
+		Assert.assertEquals(duration, info.getDuration());
+		byte[] bytes = withTLEN(audio, String.valueOf(duration * 11 / 10));
+		info = read(bytes, DurationStrategy.TRUST_TAGS);
+		Assert.assertEquals(DurationMethod.CBR, info.getDurationMethod());
+		Assert.assertEquals(duration, info.getDuration(), 1000L);
+
+		MP3Options options = new MP3Options();
+		options.setTagDurationTolerance(0.2);
+		try (InputStream input = new BufferedInputStream(new ByteArrayInputStream(bytes))) {
+			info = new MP3Info(input, bytes.length, Level.FINEST, options);
+		}
+		Assert.assertEquals(DurationMethod.TAG, info.getDurationMethod());
+		Assert.assertEquals(duration * 11 / 10, info.getDuration());
+	}
+
+	@Test
+	public void testStreamProperties() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		byte[] bytes = Files.readAllBytes(mp3File.toPath());
+		MP3Info info = read(bytes, DurationStrategy.TRUST_TAGS);
+		Assert.assertEquals(44100, info.getSampleRate());
+		Assert.assertEquals(2, info.getChannels());
+		Assert.assertTrue(info.isVBR()); // Xing header
+		Assert.assertEquals("LAME3.82", info.getEncoder());
+		Assert.assertEquals(info.getVBRHeader().getBytes() * 8000L / info.getDuration(), info.getBitrate(), 1000);
+		Assert.assertEquals(0, info.getMinBitrate());
+		Assert.assertEquals(0, info.getMaxBitrate());
+		info = read(bytes, DurationStrategy.EXACT_SCAN);
+		Assert.assertEquals(64000, info.getMinBitrate());
+		Assert.assertEquals(64000, info.getMaxBitrate());
+
+		info = read(readBytesWithoutXingHeader(mp3File), DurationStrategy.HEADER_ONLY);
+		Assert.assertFalse(info.isVBR());
+		Assert.assertNull(info.getEncoder());
+		Assert.assertEquals(64000, info.getBitrate());
+		Assert.assertEquals(64000, info.getMinBitrate());
+		Assert.assertEquals(64000, info.getMaxBitrate());
+
+		mp3File = new File(getClass().getResource("/sample-assets/id3v10.mp3").toURI());
+		info = read(withTLEN(Files.readAllBytes(mp3File.toPath()), "1234"), DurationStrategy.EXACT_SCAN);
+		Assert.assertEquals(44100, info.getSampleRate());
+		Assert.assertTrue(info.isVBR());
+		Assert.assertEquals(32000, info.getMinBitrate());
+		Assert.assertEquals(224000, info.getMaxBitrate());
+		Assert.assertTrue(info.getBitrate() > 32000 && info.getBitrate() < 224000);
+
+		info = read(withTLEN(Files.readAllBytes(mp3File.toPath()), "1234"), DurationStrategy.TRUST_TAGS);
+		Assert.assertEquals(DurationMethod.TAG, info.getDurationMethod());
+		Assert.assertEquals(44100, info.getSampleRate());
+		Assert.assertEquals("LAME3.92", info.getEncoder());
+	}
+
+	@Test
+	public void testVBRHeader() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/id3v23_id3v11.mp3").toURI());
+		byte[] bytes = Files.readAllBytes(mp3File.toPath());
+		bytes[7] = bytes[8] = bytes[9] = 0; // hide ID3v2 frames to calculate duration
+		try (InputStream input = new BufferedInputStream(new ByteArrayInputStream(bytes))) {
+			MP3Info info = new MP3Info(input, bytes.length);
+			Assert.assertEquals(156L, info.getDuration());
+			MP3VBRHeader vbrHeader = info.getVBRHeader();
+			Assert.assertNotNull(vbrHeader);
+			Assert.assertEquals(MP3VBRHeader.Type.XING, vbrHeader.getType());
+			Assert.assertEquals(6, vbrHeader.getFrames());
+			Assert.assertEquals(2869L, vbrHeader.getBytes());
+			Assert.assertEquals(100, vbrHeader.getToc().length);
+			Assert.assertEquals("LAME3.92", vbrHeader.getEncoder());
+			Assert.assertEquals(576, vbrHeader.getEncoderDelay());
+			Assert.assertEquals(1926, vbrHeader.getEncoderPadding());
+			Assert.assertEquals(2869L, vbrHeader.getMusicLength());
+			Assert.assertEquals(6 * 1152L, vbrHeader.getTotalSamples());
+			Assert.assertEquals(100L, vbrHeader.getGaplessDuration());
+			Assert.assertEquals(0L, vbrHeader.getSeekOffset(0));
+			Assert.assertTrue(vbrHeader.getSeekOffset(100) > 0);
+			Assert.assertTrue(vbrHeader.getSeekOffset(100) < 2869L);
+		}
+	}
+
+	@Test
+	public void testVBRHeaderWithoutLAMETag() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		MP3Info info = new MP3Info(mp3File.toPath());
+		MP3VBRHeader vbrHeader = info.getVBRHeader();
+		Assert.assertNotNull(vbrHeader);
+		Assert.assertEquals(170, vbrHeader.getFrames());
+		Assert.assertEquals("LAME3.82", vbrHeader.getEncoder());
+		Assert.assertEquals(-1, vbrHeader.getEncoderDelay());
+		Assert.assertEquals(-1, vbrHeader.getEncoderPadding());
+	}
+
 	@Test
 	public void testV10Tag() throws Exception {
 		File mp3File = new File(getClass().getResource("/sample-assets/id3v10.mp3").toURI());
@@ -78,6 +368,56 @@ public class MP3InfoTest {
 		}
 	}
 
+	@Test
+	public void testV10TagPath() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/id3v10.mp3").toURI());
+		MP3Info info = new MP3Info(mp3File.toPath());
+		Assert.assertEquals("TITLE1234567890123456789012345", info.getTitle());
+		Assert.assertEquals("ARTIST123456789012345678901234", info.getArtist());
+		Assert.assertEquals("Pop", info.getGenre());
+		Assert.assertEquals(156L, info.getDuration());
+	}
+
+	@Test
+	public void testV10TagSource() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/id3v10.mp3").toURI());
+		final ByteBufferSource bytes = new ByteBufferSource(Files.readAllBytes(mp3File.toPath()));
+		final List<Long> reads = new ArrayList<Long>();
+		MP3Info info = new MP3Info(new RandomAccessSource() {
+			@Override
+			public long length() {
+				return bytes.length();
+			}
+			@Override
+			public int read(long position, ByteBuffer buffer) {
+				reads.add(position);
+				return bytes.read(position, buffer);
+			}
+			@Override
+			public ByteBuffer map(long position, int length) {
+				return bytes.map(position, length);
+			}
+		});
+		Assert.assertEquals("TITLE1234567890123456789012345", info.getTitle());
+		Assert.assertEquals("ARTIST123456789012345678901234", info.getArtist());
+		Assert.assertEquals("Pop", info.getGenre());
+		Assert.assertEquals(156L, info.getDuration());
+		Assert.assertEquals(Arrays.asList(bytes.length() - 128, bytes.length() - 128 - 32), reads); // ID3v1 tag, APE/Lyrics3 trailer
+	}
+
+	@Test
+	public void testSampleSource() throws Exception {
+		File mp3File = new File(getClass().getResource("/sample-assets/sample.mp3").toURI());
+		byte[] bytes = readBytesWithoutXingHeader(mp3File);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 10);
+		buffer.position(10);
+		buffer.put(bytes).position(10);
+		MP3Info info = new MP3Info(new ByteBufferSource(buffer));
+		Assert.assertEquals("Sample MP3", info.getTitle());
+		Assert.assertEquals(4466L, info.getDuration());
+		Assert.assertEquals(10, buffer.position());
+	}
+
 	@Test
 	public void testV11Tag() throws Exception {
 		File mp3File = new File(getClass().getResource("/sample-assets/id3v11.mp3").toURI());
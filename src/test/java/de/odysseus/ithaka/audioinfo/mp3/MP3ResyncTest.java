@@ -0,0 +1,191 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.odysseus.ithaka.audioinfo.util.ByteBufferSource;
+
+public class MP3ResyncTest {
+	/**
+	 * Pathological garbage preceding the audio frames.
+	 */
+	enum Garbage {
+		/**
+		 * Run of <code>0xFF</code> bytes (every byte starts a sync candidate).
+		 */
+		FF_RUN,
+		/**
+		 * Valid 128kbps frame headers every four bytes, none of them followed by a frame header.
+		 */
+		HEADER_FLOOD,
+		/**
+		 * Random bytes (e.g. an embedded image).
+		 */
+		RANDOM
+	}
+
+	/**
+	 * Counts the bytes read (not skipped) from the delegate.
+	 */
+	static class CountingInputStream extends FilterInputStream {
+		long count;
+
+		CountingInputStream(InputStream delegate) {
+			super(delegate);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * Create the given amount of garbage followed by the given number of 128kbps frames (MPEG1 Layer III, 44.1kHz).
+	 */
+	static byte[] createInput(Garbage garbage, int length, int frames) {
+		byte[] bytes = new byte[length + frames * 417];
+		switch (garbage) {
+		case FF_RUN:
+			Arrays.fill(bytes, 0, length, (byte)0xFF);
+			break;
+		case HEADER_FLOOD: // frames are 417 bytes, so follow-up headers are at odd offsets
+			for (int i = 0; i + 4 <= length; i += 4) {
+				bytes[i] = (byte)0xFF;
+				bytes[i + 1] = (byte)0xFB;
+				bytes[i + 2] = (byte)0x90;
+				bytes[i + 3] = (byte)0x40;
+			}
+			break;
+		case RANDOM:
+			byte[] random = new byte[length];
+			new Random(4711).nextBytes(random);
+			System.arraycopy(random, 0, bytes, 0, length);
+			break;
+		}
+		for (int i = 0; i < frames; i++) {
+			int offset = length + i * 417;
+			bytes[offset] = (byte)0xFF;
+			bytes[offset + 1] = (byte)0xFB;
+			bytes[offset + 2] = (byte)0x90;
+			bytes[offset + 3] = (byte)0x40;
+		}
+		return bytes;
+	}
+
+	private MP3Options options(long maxResyncDistance) {
+		MP3Options options = new MP3Options();
+		options.setFrameIndexInterval(1);
+		options.setMaxResyncDistance(maxResyncDistance);
+		return options;
+	}
+
+	private MP3Info streamInfo(InputStream input, long length, long maxResyncDistance) throws Exception {
+		return new MP3Info(input, length, Level.FINEST, options(maxResyncDistance));
+	}
+
+	private MP3Info bufferInfo(byte[] bytes, long maxResyncDistance) throws Exception {
+		return new MP3Info(new ByteBufferSource(bytes), Level.FINEST, options(maxResyncDistance));
+	}
+
+	private void check(int length, MP3Info info) {
+		Assert.assertEquals(length, info.getFrameIndex().getOffset(0));
+		Assert.assertEquals(100, info.getFrameIndex().getFrames());
+	}
+
+	@Test
+	public void testGarbage() throws Exception {
+		for (Garbage garbage : Garbage.values()) {
+			for (int length : new int[]{ 0, 1, 1000, 100000 }) {
+				byte[] bytes = createInput(garbage, length, 100);
+				check(length, streamInfo(new BufferedInputStream(new ByteArrayInputStream(bytes)), bytes.length, 0));
+				check(length, bufferInfo(bytes, 0));
+			}
+		}
+	}
+
+	@Test
+	public void testLinearReads() throws Exception {
+		for (Garbage garbage : Garbage.values()) {
+			long[] counts = new long[2];
+			for (int i = 0; i < counts.length; i++) {
+				int length = 100000 << i;
+				byte[] bytes = createInput(garbage, length, 100);
+				CountingInputStream input = new CountingInputStream(new BufferedInputStream(new ByteArrayInputStream(bytes)));
+				check(length, streamInfo(input, bytes.length, 0));
+				counts[i] = input.count;
+				Assert.assertTrue(garbage + ": " + counts[i], counts[i] < 8L * bytes.length);
+			}
+			Assert.assertTrue(garbage + ": " + Arrays.toString(counts), counts[1] < 3 * counts[0]);
+		}
+	}
+
+	@Test
+	public void testMaxResyncDistance() throws Exception {
+		for (Garbage garbage : Garbage.values()) {
+			byte[] bytes = createInput(garbage, 100000, 100);
+			check(100000, streamInfo(new BufferedInputStream(new ByteArrayInputStream(bytes)), bytes.length, 100001));
+			check(100000, bufferInfo(bytes, 100001));
+			// duration errors are logged, not thrown
+			Assert.assertNull(streamInfo(new BufferedInputStream(new ByteArrayInputStream(bytes)), bytes.length, 100000).getFrameIndex());
+			Assert.assertNull(bufferInfo(bytes, 100000).getFrameIndex());
+		}
+	}
+
+	@Test
+	public void testResyncAfterSyncLoss() throws Exception {
+		byte[] frames = createInput(Garbage.RANDOM, 0, 50);
+		byte[] bytes = new byte[2 * frames.length + 1000];
+		System.arraycopy(frames, 0, bytes, 0, frames.length);
+		System.arraycopy(frames, 0, bytes, frames.length + 1000, frames.length); // zeros between
+		MP3Options options = new MP3Options();
+		options.setDurationStrategy(DurationStrategy.EXACT_SCAN);
+		Assert.assertEquals(1000L * 50 * 1152 / 44100, new MP3Info(new ByteBufferSource(bytes), Level.FINEST, options).getDuration());
+		options.setResync(true);
+		MP3Info info = new MP3Info(new ByteBufferSource(bytes), Level.FINEST, options);
+		Assert.assertEquals(1000L * 100 * 1152 / 44100, info.getDuration());
+		Assert.assertNull(info.getAudit());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxResyncDistance() {
+		new MP3Options().setMaxResyncDistance(-1);
+	}
+}
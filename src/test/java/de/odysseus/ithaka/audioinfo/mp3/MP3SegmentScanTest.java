@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MP3SegmentScanTest {
+	private void check(byte[] bytes) throws Exception {
+		Path path = Files.createTempFile("scan", ".mp3");
+		try {
+			Files.write(path, bytes);
+			long expected = new MP3Info(path).getDuration();
+			for (int segments = 2; segments < 8; segments++) {
+				MP3Options options = new MP3Options();
+				options.setScanSegments(segments);
+				Assert.assertEquals(expected, new MP3Info(path, Level.FINEST, options).getDuration());
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testScan() throws Exception {
+		check(MP3TestData.createFrames(new Random(4711), 12000, true));
+	}
+
+	@Test
+	public void testSyncLoss() throws Exception {
+		Random random = new Random(4711);
+		byte[] head = MP3TestData.createFrames(random, 5000, true);
+		byte[] tail = MP3TestData.createFrames(random, 5000, true);
+		byte[] bytes = new byte[head.length + 3 + tail.length];
+		System.arraycopy(head, 0, bytes, 0, head.length);
+		bytes[head.length] = (byte)0xFF;
+		bytes[head.length + 1] = (byte)0xFB;
+		System.arraycopy(tail, 0, bytes, head.length + 3, tail.length);
+		check(bytes);
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MP3SyncTest {
+	private int find(byte[] bytes, int from, int to) {
+		for (int i = from; i + 1 < to; i++) {
+			if ((bytes[i] & 0xFF) == 0xFF && (bytes[i + 1] & 0xE0) == 0xE0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void check(byte[] bytes) {
+		for (int from = 0; from < 20; from++) {
+			for (int to = bytes.length - 20; to <= bytes.length; to++) {
+				int expected = find(bytes, from, to);
+				Assert.assertEquals(expected, MP3Sync.find(bytes, from, to));
+				ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+				Assert.assertEquals(expected, MP3Sync.find(buffer, from, to));
+			}
+		}
+	}
+
+	@Test
+	public void testSparse() {
+		Random random = new Random(4711);
+		byte[] bytes = new byte[1000];
+		for (int i = 0; i < 100; i++) {
+			random.nextBytes(bytes);
+			check(bytes);
+		}
+	}
+
+	@Test
+	public void testDense() {
+		Random random = new Random(4711);
+		byte[] bytes = new byte[1000];
+		for (int i = 0; i < 100; i++) {
+			for (int j = 0; j < bytes.length; j++) {
+				bytes[j] = (byte)(random.nextBoolean() ? 0xFF : 0xC0 | random.nextInt(64));
+			}
+			check(bytes);
+		}
+	}
+
+	@Test
+	public void testSingleCandidate() {
+		for (int i = 0; i < 63; i++) {
+			byte[] bytes = new byte[64];
+			bytes[i] = (byte)0xFF;
+			bytes[i + 1] = (byte)0xE0;
+			Assert.assertEquals(i, MP3Sync.find(bytes, 0, bytes.length));
+			Assert.assertEquals(-1, MP3Sync.find(bytes, 0, i + 1));
+			Assert.assertEquals(-1, MP3Sync.find(bytes, i + 1, bytes.length));
+		}
+	}
+}
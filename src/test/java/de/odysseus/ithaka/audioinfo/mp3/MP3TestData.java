@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * Synthetic audio data for tests.
+ */
+final class MP3TestData {
+	private MP3TestData() {
+	}
+
+	/**
+	 * Create VBR stream (MPEG1 Layer III, 44.1kHz, joint stereo, no CRC) with random bitrates.
+	 * @param random random
+	 * @param frames number of frames
+	 * @param falseSyncs <code>true</code> for payloads containing a false sync candidate and chains of false
+	 * 128kbps frame headers (417 bytes apart), which fool the resync; <code>false</code> for random payloads
+	 * without sync bytes
+	 * @return frames
+	 */
+	static byte[] createFrames(Random random, int frames, boolean falseSyncs) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (int i = 0; i < frames; i++) {
+			int bitrateIndex = 1 + random.nextInt(14);
+			int frameSize = MP3Frame.Header.tryDecode(0xFB, bitrateIndex << 4, 0x40).getFrameSize();
+			byte[] frame = new byte[frameSize];
+			frame[0] = (byte)0xFF;
+			frame[1] = (byte)0xFB;
+			frame[2] = (byte)(bitrateIndex << 4);
+			frame[3] = (byte)0x40;
+			if (falseSyncs) {
+				for (int offset = 4; offset + 4 <= frameSize; offset += 139) {
+					frame[offset] = (byte)0xFF;
+					frame[offset + 1] = (byte)0xFB;
+					frame[offset + 2] = (byte)0x90;
+					frame[offset + 3] = (byte)0x40;
+				}
+				int falseSync = 4 + random.nextInt(frameSize - 8);
+				frame[falseSync] = (byte)0xFF;
+				frame[falseSync + 1] = (byte)0xFB;
+				frame[falseSync + 2] = (byte)0x90;
+			} else {
+				for (int j = 4; j < frameSize; j++) {
+					frame[j] = (byte)random.nextInt(0xFF); // no sync
+				}
+			}
+			output.write(frame, 0, frame.length);
+		}
+		return output.toByteArray();
+	}
+}
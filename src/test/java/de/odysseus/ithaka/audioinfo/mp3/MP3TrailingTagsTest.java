@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.mp3;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.odysseus.ithaka.audioinfo.util.ByteBufferSource;
+
+public class MP3TrailingTagsTest {
+	private byte[] ape(int items, boolean header) {
+		ByteBuffer footer = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+		footer.put("APETAGEX".getBytes(StandardCharsets.ISO_8859_1));
+		footer.putInt(2000);
+		footer.putInt(32 + items * 10); // size (items + footer)
+		footer.putInt(items);
+		footer.putInt(header ? 0x80000000 : 0);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		if (header) {
+			output.write(footer.array(), 0, 32);
+		}
+		output.write(new byte[items * 10], 0, items * 10);
+		output.write(footer.array(), 0, 32);
+		return output.toByteArray();
+	}
+
+	private byte[] lyrics3v2(String lyrics) {
+		String body = "LYRICSBEGIN" + lyrics;
+		return (body + String.format("%06d", body.length()) + "LYRICS200").getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private byte[] lyrics3v1(String lyrics) {
+		return ("LYRICSBEGIN" + lyrics + "LYRICSEND").getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private long audioEnd(byte[]... parts) throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			output.write(part, 0, part.length);
+		}
+		byte[] bytes = output.toByteArray();
+		return MP3TrailingTags.audioEnd(new ByteBufferSource(bytes), bytes.length);
+	}
+
+	@Test
+	public void testNone() throws Exception {
+		Assert.assertEquals(1000, audioEnd(new byte[1000]));
+		Assert.assertEquals(10, audioEnd(new byte[10]));
+		Assert.assertEquals(0, audioEnd());
+	}
+
+	@Test
+	public void testAPE() throws Exception {
+		Assert.assertEquals(1000, audioEnd(new byte[1000], ape(3, false)));
+		Assert.assertEquals(1000, audioEnd(new byte[1000], ape(3, true)));
+		Assert.assertEquals(1000, audioEnd(new byte[1000], ape(0, true)));
+	}
+
+	@Test
+	public void testLyrics3() throws Exception {
+		Assert.assertEquals(1000, audioEnd(new byte[1000], lyrics3v2("[ind]0100")));
+		Assert.assertEquals(1000, audioEnd(new byte[1000], lyrics3v1("Some lyrics")));
+	}
+
+	@Test
+	public void testCombined() throws Exception {
+		Assert.assertEquals(1000, audioEnd(new byte[1000], ape(2, true), lyrics3v2("[ind]0100")));
+		Assert.assertEquals(1000, audioEnd(new byte[1000], lyrics3v1("Some lyrics"), ape(2, false)));
+	}
+
+	@Test
+	public void testInvalid() throws Exception {
+		byte[] size = lyrics3v2("[ind]0100");
+		size[size.length - 10] = 'x'; // invalid size digit
+		Assert.assertEquals(1000 + size.length, audioEnd(new byte[1000], size));
+		byte[] begin = lyrics3v2("[ind]0100");
+		begin[0] = 'x'; // no "LYRICSBEGIN"
+		Assert.assertEquals(1000 + begin.length, audioEnd(new byte[1000], begin));
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013-2014 Odysseus Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.odysseus.ithaka.audioinfo.util;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TextDecoderTest {
+	private static final String[] TEXTS = { "", "Title", "Café del Mar", "Æøå €", "日本語", "🎵 Song" };
+
+	private static byte[] bytes(String text, Charset charset) {
+		byte[] bytes = text.getBytes(charset);
+		byte[] result = new byte[3 + bytes.length + 2];
+		System.arraycopy(bytes, 0, result, 3, bytes.length);
+		return result; // 3 leading bytes, 2 trailing zeros
+	}
+
+	@Test
+	public void testDecode() {
+		for (String text : TEXTS) {
+			for (Charset charset : new Charset[]{ StandardCharsets.UTF_8, StandardCharsets.UTF_16BE, StandardCharsets.UTF_16LE }) {
+				byte[] bytes = bytes(text, charset);
+				Assert.assertEquals(text, TextDecoder.decode(bytes, 3, bytes.length - 5, charset));
+				Assert.assertEquals(text, TextDecoder.decodeTerminated(bytes, 3, bytes.length - 3, charset));
+				bytes = bytes("\uFEFF" + text, charset);
+				Assert.assertEquals(text, TextDecoder.decode(bytes, 3, bytes.length - 5, charset));
+			}
+			if (StandardCharsets.ISO_8859_1.newEncoder().canEncode(text)) {
+				byte[] bytes = bytes(text, StandardCharsets.ISO_8859_1);
+				Assert.assertEquals(text, TextDecoder.decodeTerminated(bytes, 3, bytes.length - 3, StandardCharsets.ISO_8859_1));
+			}
+			// UTF-16: byte order given by BOM, big endian by default
+			byte[] bytes = bytes("\uFEFF" + text, StandardCharsets.UTF_16LE);
+			Assert.assertEquals(text, TextDecoder.decodeTerminated(bytes, 3, bytes.length - 3, StandardCharsets.UTF_16));
+			bytes = bytes("\uFEFF" + text, StandardCharsets.UTF_16BE);
+			Assert.assertEquals(text, TextDecoder.decodeTerminated(bytes, 3, bytes.length - 3, StandardCharsets.UTF_16));
+			bytes = bytes(text, StandardCharsets.UTF_16BE);
+			Assert.assertEquals(text, TextDecoder.decodeTerminated(bytes, 3, bytes.length - 3, StandardCharsets.UTF_16));
+		}
+	}
+
+	@Test
+	public void testTerminatedLength() {
+		byte[] bytes = { 'a', 0, 'b', 0, 0, 0 };
+		Assert.assertEquals(1, TextDecoder.terminatedLength(bytes, 0, bytes.length, StandardCharsets.UTF_8));
+		Assert.assertEquals(4, TextDecoder.terminatedLength(bytes, 0, bytes.length, StandardCharsets.UTF_16LE));
+		Assert.assertEquals(3, TextDecoder.terminatedLength(bytes, 1, 3, StandardCharsets.UTF_16BE)); // odd tail byte
+		Assert.assertEquals("ab", TextDecoder.decodeTerminated(bytes, 0, bytes.length, StandardCharsets.UTF_16LE));
+	}
+
+	@Test
+	public void testMalformed() {
+		byte[] bytes = { 'a', 0, 0x00, (byte)0xD8, 'b' }; // unpaired surrogate, odd length
+		Assert.assertEquals(new String(bytes, StandardCharsets.UTF_16LE), TextDecoder.decode(bytes, 0, bytes.length, StandardCharsets.UTF_16LE));
+		bytes = new byte[]{ 'a', (byte)0xC3 };
+		Assert.assertEquals(new String(bytes, StandardCharsets.UTF_8), TextDecoder.decode(bytes, 0, bytes.length, StandardCharsets.UTF_8));
+	}
+}